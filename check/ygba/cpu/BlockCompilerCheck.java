@@ -0,0 +1,164 @@
+package ygba.cpu;
+
+import ygba.YGBA;
+import ygba.memory.IORegMemory;
+import ygba.memory.Memory;
+
+/**
+ * Compiles a few known THUMB blocks with BlockCompiler and checks that each
+ * compiled class leaves the registers, the CPSR and the remaining cycles as
+ * the interpreter does in runBlock: a straight-line block, exits on a taken
+ * and a not taken branch and on a switch to ARM state, and early exits when
+ * the cycles run out or an interrupt becomes pending.
+ * Run by the checkBlockCompiler Gradle task, part of check.
+ */
+public final class BlockCompilerCheck {
+
+    private final static int
+            CodeAddress = 0x02000100,
+            DataAddress = 0x02001000,
+            IMEAddress  = 0x04000000 + IORegMemory.REG_IME,
+            IEAddress   = 0x04000000 + IORegMemory.REG_IE,
+            IFAddress   = 0x04000000 + IORegMemory.REG_IF;
+
+    // SYS mode, THUMB state, IRQ enabled
+    private final static int InitialCPSR = ARM7TDMI.SYSMode | 0x00000020;
+
+    private final static short[] StraightLine = {
+            0x20C8, // movs r0, #200
+            0x2164, // movs r1, #100
+            0x1842, // adds r2, r0, r1
+            0x1A0B, // subs r3, r1, r0
+            0x0604, // lsls r4, r0, #24
+            0x414C, // adcs r4, r1
+            0x43D5, // mvns r5, r2
+            0x4345, // muls r5, r0
+            0x6032, // str  r2, [r6]
+            0x6837, // ldr  r7, [r6]
+            0x405F, // eors r7, r3
+            0x2F00, // cmp  r7, #0
+            (short) 0xE07E, // b    +0xFC
+    };
+
+    private final static short[] ConditionalBranch = {
+            0x3001, // adds r0, #1
+            0x2805, // cmp  r0, #5
+            (short) 0xD0F0, // beq  -0x20
+    };
+
+    private final static short[] ExchangeToARM = {
+            0x2003, // movs r0, #3
+            0x4708, // bx   r1
+    };
+
+    private final static short[] EnableIRQ = {
+            0x2101, // movs r1, #1
+            0x6031, // str  r1, [r6] (IME)
+            0x2203, // movs r2, #3
+            0x2304, // movs r3, #4
+            (short) 0xE07E, // b    +0xFC
+    };
+
+    private final ARM7TDMI cpu;
+    private final Memory memory;
+    private int blockCount;
+
+
+    private BlockCompilerCheck() {
+        YGBA ygba = new YGBA();
+        cpu = ygba.getCPU();
+        memory = ygba.getMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        // ygba.* properties are forwarded to Gradle's JavaExec tasks: the
+        // compiled path must not be turned off by one of them
+        System.setProperty("ygba.cpu.recompiler", "true");
+        new BlockCompilerCheck().run();
+    }
+
+    private void run() throws Exception {
+        int cycles = 100 * ARM7TDMI.CyclesPerInstruction;
+
+        check("straight line", StraightLine, new int[] {0, 0, 0, 0, 0, 0, DataAddress},
+                cycles, false, CodeAddress + 0x0118);
+        check("branch taken", ConditionalBranch, new int[] {4},
+                cycles, false, CodeAddress + 0x0004 + 4 - 0x20);
+        check("branch not taken", ConditionalBranch, new int[] {0},
+                cycles, false, CodeAddress + 0x0006);
+        check("switch to ARM", ExchangeToARM, new int[] {0, CodeAddress + 0x0100},
+                cycles, false, CodeAddress + 0x0100);
+        check("out of cycles", StraightLine, new int[] {0, 0, 0, 0, 0, 0, DataAddress},
+                3 * ARM7TDMI.CyclesPerInstruction, false, CodeAddress + 0x0006);
+        check("last cycle", StraightLine, new int[] {0, 0, 0, 0, 0, 0, DataAddress},
+                1, false, CodeAddress + 0x0002);
+        check("IRQ", EnableIRQ, new int[] {0, 0, 0, 0, 0, 0, IMEAddress},
+                cycles, true, CodeAddress + 0x0004);
+
+        System.out.println("BlockCompilerCheck: " + blockCount + " blocks OK");
+    }
+
+    // Runs the code from CodeAddress through the interpreter, then through
+    // its compiled class, from the same state
+    private void check(String name, short[] code, int[] initialRegisters, int cycles,
+                       boolean isIRQRequested, int exitAddress) throws Exception {
+        for (int i = 0; i < code.length; i++) memory.storeHalfWord(CodeAddress + (i << 1), code[i]);
+
+        BlockCache.Block interpreted = cpu.buildBlock(CodeAddress, true);
+        interpreted.isCompilable = false;
+        if (interpreted.opcodes.length != code.length) {
+            throw new AssertionError(name + ": block has " + interpreted.opcodes.length
+                    + " instructions instead of " + code.length);
+        }
+
+        BlockCache.Block block = cpu.buildBlock(CodeAddress, true);
+        CompiledBlock compiledBlock = BlockCompiler.compile(block, ++blockCount);
+        block.compiled = compiledBlock;
+
+        int[] expected = execute(interpreted, initialRegisters, cycles, isIRQRequested);
+        if (cpu.getCurrentPC() != exitAddress) {
+            throw new AssertionError(String.format("%s: interpreter left the block at %08X instead of %08X",
+                    name, cpu.getCurrentPC(), exitAddress));
+        }
+        int[] actual = execute(block, initialRegisters, cycles, isIRQRequested);
+
+        for (int i = 0; i < expected.length; i++) {
+            if (actual[i] != expected[i]) {
+                throw new AssertionError(String.format("%s: %s is %08X compiled, %08X interpreted",
+                        name, getStateName(i), actual[i], expected[i]));
+            }
+        }
+    }
+
+    // R0-R15, CPSR and remaining cycles after the block
+    private int[] execute(BlockCache.Block block, int[] initialRegisters, int cycles, boolean isIRQRequested) {
+        memory.storeHalfWord(IMEAddress, (short) 0);
+        memory.storeHalfWord(IFAddress, (short) 0xFFFF);
+        memory.storeHalfWord(IEAddress, (short) (isIRQRequested ? 0x0001 : 0x0000));
+        if (isIRQRequested) memory.getIORegMemory().generateInterrupt(IORegMemory.VBlankInterruptBit);
+
+        cpu.setCPSR(InitialCPSR);
+        for (int i = 0; i < 15; i++) {
+            cpu.setRegister(i, (i < initialRegisters.length) ? initialRegisters[i] : 0);
+        }
+        cpu.setPC(CodeAddress + 4);
+        cpu.setRemainingCycles(cycles);
+
+        cpu.runBlock(block);
+
+        int[] state = new int[18];
+        for (int i = 0; i < 16; i++) state[i] = cpu.getRegister(i);
+        state[16] = cpu.getCPSR();
+        state[17] = cpu.getRemainingCycles();
+        return state;
+    }
+
+    private static String getStateName(int index) {
+        switch (index) {
+            case 16: return "CPSR";
+            case 17: return "remaining cycles";
+            default: return "R" + index;
+        }
+    }
+
+}
@@ -15,6 +15,8 @@ import java.net.URL;
  * Headless programmatic API for the GBA emulator.
  * No AWT imports are required to construct or step frames;
  * getFrameAsImage() is the only method that uses AWT (opt-in).
+ * Agents do not share any emulation state: many of them can run in the
+ * same JVM, one thread each.
  */
 public final class Agent {
 
@@ -92,6 +94,13 @@ public final class Agent {
         return memory;
     }
 
+    // 64-bit hash of a memory range within one bank, e.g. EWRAM
+    // (0x02000000, 0x40000); only the pages written since the previous call
+    // are hashed again, so hashing every frame costs O(changed memory)
+    public long getMemoryHash(int address, int length) {
+        return memory.getHash64(address, length);
+    }
+
     public void stop() {
         ygba.stop();
     }
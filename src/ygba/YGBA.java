@@ -6,11 +6,20 @@ import ygba.memory.SaveMemory;
 import ygba.memory.SavePersistence;
 import ygba.dma.DirectMemoryAccess;
 import ygba.gfx.GFX;
+import ygba.time.Scheduler;
 import ygba.time.Time;
 
 import java.io.File;
 import java.util.Arrays;
 
+/**
+ * One emulated Game Boy Advance.
+ * Every instance owns its whole machine state (CPU, memory, devices,
+ * scheduler, block cache), so separate instances are independent and may
+ * run concurrently, each on its own thread. The only things they share are
+ * the immutable decode tables of ARM7TDMI and the background thread of the
+ * block compiler, which only reads the blocks handed to it.
+ */
 public final class YGBA {
     
     private ARM7TDMI cpu;
@@ -18,6 +27,7 @@ public final class YGBA {
     private DirectMemoryAccess dma;
     private GFX gfx;
     private Time time;
+    private Scheduler scheduler;
     
     private YGBACore ygbaCore;
     private Thread ygbaThread;
@@ -32,8 +42,9 @@ public final class YGBA {
         dma = new DirectMemoryAccess();
         gfx = new GFX();
         time = new Time();
+        scheduler = new Scheduler();
         
-        ygbaCore = new YGBACore(cpu, memory, time);
+        ygbaCore = new YGBACore(cpu, memory, time, scheduler);
         ygbaThread = null;
         
         setupConnections();
@@ -41,12 +52,17 @@ public final class YGBA {
     
     private void setupConnections() {
         cpu.connectToMemory(memory);
+        cpu.connectToIORegMemory(memory.getIORegMemory());
+        memory.connectToCPU(cpu);
         memory.connectToDMA(dma);
         memory.connectToGraphics(gfx);
         memory.connectToTime(time);
+        memory.connectToBlockCache(cpu.getBlockCache());
         dma.connectToMemory(memory);
         gfx.connectToMemory(memory);
         time.connectToMemory(memory);
+        time.connectToScheduler(scheduler);
+        scheduler.connectToCPU(cpu);
     }
     
     
@@ -60,6 +76,8 @@ public final class YGBA {
     
     public Time getTime() { return time; }
     
+    public Scheduler getScheduler() { return scheduler; }
+    
     
     public void runOneFrame() {
         ygbaCore.runOneFrame();
@@ -75,6 +93,7 @@ public final class YGBA {
         dma.reset();
         gfx.reset();
         time.reset();
+        ygbaCore.reset();
         
         ygbaThread = null;
         
@@ -106,6 +125,7 @@ public final class YGBA {
 
         // Fill with 0xFF (erased flash state) before loading
         Arrays.fill(saveMem.getSpace(), (byte) 0xFF);
+        saveMem.markAllDirty();
 
         savePersistence = new SavePersistence(saveMem, saveFile);
         saveMem.setPersistence(savePersistence);
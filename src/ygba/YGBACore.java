@@ -4,6 +4,8 @@ import ygba.cpu.ARM7TDMI;
 import ygba.memory.Memory;
 import ygba.memory.IORegMemory;
 import ygba.memory.SavePersistence;
+import ygba.time.Event;
+import ygba.time.Scheduler;
 import ygba.time.Time;
 
 public final class YGBACore
@@ -12,6 +14,11 @@ public final class YGBACore
     private ARM7TDMI cpu;
     private IORegMemory iorMem;
     private Time time;
+    private Scheduler scheduler;
+
+    private int scanline;
+    private long frameEndTime;
+    private final Event hBlankEvent, lineEndEvent;
 
     private boolean stopped;
     private boolean framePacing = true;
@@ -26,10 +33,23 @@ public final class YGBACore
     private long statusWindowStart;
     
     
-    public YGBACore(ARM7TDMI cpu, Memory memory, Time time) {
+    public YGBACore(ARM7TDMI cpu, Memory memory, Time time, Scheduler scheduler) {
         this.cpu = cpu;
         this.iorMem = memory.getIORegMemory();
         this.time = time;
+        this.scheduler = scheduler;
+        
+        hBlankEvent = new Event() {
+            protected void handle() {
+                iorMem.enterHBlank();
+            }
+        };
+        lineEndEvent = new Event() {
+            protected void handle() {
+                endLine(getTime());
+            }
+        };
+        reset();
         
         stopped = true;
         debugConsole = Boolean.getBoolean("ygba.debug.console");
@@ -54,7 +74,8 @@ public final class YGBACore
             CyclesPerDot    = 4,
             CyclesPerHDraw  = HDrawDots * CyclesPerDot,
             CyclesPerHBlank = HBlankDots * CyclesPerDot,
-            CyclesPerLine   = CyclesPerHDraw + CyclesPerHBlank;
+            CyclesPerLine   = CyclesPerHDraw + CyclesPerHBlank,
+            CyclesPerFrame  = CyclesPerLine * VLines;
     
     // GBA runs at ~59.7275 fps => ~16.743 ms per frame
     private final static long FRAME_TIME_NS = 16_743_000L;
@@ -67,17 +88,32 @@ public final class YGBACore
         this.savePersistence = savePersistence;
     }
 
+    public void reset() {
+        scheduler.reset();
+        scanline = 0;
+        frameEndTime = 0;
+    }
+
+    // The video timing is two events per line, HBlank and end of line; the
+    // CPU runs freely in between
     public void runOneFrame() {
-        for (int scanline = 0; scanline < VLines; scanline++) {
-            iorMem.setCurrentScanline(scanline);
-            cpu.run(CyclesPerHDraw);
-            iorMem.enterHBlank();
-            cpu.run(CyclesPerHBlank);
-            iorMem.exitHBlank();
-            time.addTime(CyclesPerLine);
-            if (scanline == VDrawLines - 1) iorMem.enterVBlank();
-            else if (scanline == VLines - 1) iorMem.exitVBlank();
-        }
+        if (!lineEndEvent.isScheduled()) startLine(scheduler.getCurrentTime());
+        frameEndTime += CyclesPerFrame;
+        scheduler.runUntil(frameEndTime);
+    }
+
+    private void startLine(long lineStartTime) {
+        iorMem.setCurrentScanline(scanline);
+        scheduler.schedule(hBlankEvent, lineStartTime + CyclesPerHDraw);
+        scheduler.schedule(lineEndEvent, lineStartTime + CyclesPerLine);
+    }
+
+    private void endLine(long lineEndTime) {
+        iorMem.exitHBlank();
+        if (scanline == VDrawLines - 1) iorMem.enterVBlank();
+        else if (scanline == VLines - 1) iorMem.exitVBlank();
+        scanline = (scanline + 1) % VLines;
+        startLine(lineEndTime);
     }
 
     public void run() {
@@ -126,8 +162,8 @@ public final class YGBACore
             int dispstat = iorMem.getHalfWord(IORegMemory.REG_DISPSTAT) & 0xFFFF;
             int vcount = iorMem.getCurrentScanline();
             System.out.printf(
-                    "[DBG] possible stall pc=%08X frames=%d mode=%s T=%b I=%b IME=%04X IE=%04X IF=%04X DISPSTAT=%04X VCOUNT=%d%n",
-                    currentPC, stalledFrames, cpu.getModeName(), cpu.getTFlag(), cpu.getIFlag(),
+                    "[DBG] possible stall pc=%08X frames=%d mode=%s T=%b I=%b halted=%b IME=%04X IE=%04X IF=%04X DISPSTAT=%04X VCOUNT=%d%n",
+                    currentPC, stalledFrames, cpu.getModeName(), cpu.getTFlag(), cpu.getIFlag(), cpu.isHalted(),
                     ime, ie, interruptFlags, dispstat, vcount);
         }
     }
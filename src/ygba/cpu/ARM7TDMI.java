@@ -87,8 +87,9 @@ public final class ARM7TDMI {
             SP = R13,
             LR = R14,
             PC = R15;
-    public static byte
-            SPSR;
+    
+    // SPSR du mode courant (SPSR_null en modes USR et SYS)
+    private byte spsrIndex = SPSR_null;
     
     private final static byte NB_REGS = 37;
     
@@ -96,11 +97,22 @@ public final class ARM7TDMI {
     public boolean
             tFlag,
             fFlag,
-            iFlag,
-            vFlag,
-            cFlag,
-            nFlag,
-            zFlag;
+            iFlag;
+    
+    // N et Z sont dduits du dernier rsultat (N : bit 31, Z : nul) ; C et V
+    // ne sont calculs qu' la lecture,  partir des oprandes de la dernire
+    // addition ou soustraction
+    private int nValue, zValue;
+    private boolean vFlag, cFlag;
+    private int flagsOperation, flagsOperand1, flagsOperand2, flagsResult;
+    
+    private final static int
+            FlagsUpToDate = 0,
+            FlagsFromADD  = 1,
+            FlagsFromSUB  = 2;
+    
+    private final static boolean LazyFlags =
+            !"false".equalsIgnoreCase(System.getProperty("ygba.cpu.lazyflags", "true"));
     
     private final static int
             MMask = 0x0000001F,
@@ -115,23 +127,50 @@ public final class ARM7TDMI {
     private int pipelineStage1, pipelineStage2;
     
     private MemoryInterface memory;
+    private int cycles;
+    private boolean halted;
+    private int intrWaitPC;
+    private IORegMemory iorMem;
     private final boolean useHLESWI;
     private final boolean traceSWI;
+
+    private final BlockCache blockCache;
+    private final boolean useBlockCache;
+    private final boolean useRecompiler;
+    private final boolean useARMRecompiler;
+    private final int recompileThreshold;
+    private final IdleLoopDetector idleLoopDetector;
+    private final boolean useIdleLoopDetector;
     
     
     public ARM7TDMI() {
         // Allouer l'espace ddi aux registres
         registers = new int[NB_REGS];
-        // Initialiser les tables de dcodage
-        initTHUMB();
-        initARM();
         useHLESWI = !"false".equalsIgnoreCase(System.getProperty("ygba.hle.swi", "false"));
         traceSWI = Boolean.getBoolean("ygba.trace.swi");
+        blockCache = new BlockCache();
+        useBlockCache = !"false".equalsIgnoreCase(System.getProperty("ygba.cpu.blockcache", "true"));
+        useRecompiler = !"false".equalsIgnoreCase(System.getProperty("ygba.cpu.recompiler", "true"));
+        // Les traitements ARM (un par format) sont trop gros pour tre inlins
+        // dans les blocs compils : ils n'y gagnent rien, compilation  la demande
+        useARMRecompiler = Boolean.getBoolean("ygba.cpu.recompiler.arm");
+        recompileThreshold = Integer.getInteger("ygba.cpu.recompiler.threshold", 256);
+        idleLoopDetector = new IdleLoopDetector();
+        useIdleLoopDetector = !"false".equalsIgnoreCase(System.getProperty("ygba.cpu.idleloops", "true"));
     }
     
     public void connectToMemory(MemoryInterface memory) {
         this.memory = memory;
     }
+    
+    public void connectToIORegMemory(IORegMemory iorMem) {
+        this.iorMem = iorMem;
+        idleLoopDetector.connectToIORegMemory(iorMem);
+    }
+
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
 
     // ARM7TDMI unaligned load semantics for single data transfer instructions.
     public int loadWordRotate(int address) {
@@ -176,10 +215,10 @@ public final class ARM7TDMI {
         cpsr = setBit(cpsr, TMask, tFlag);
         cpsr = setBit(cpsr, FMask, fFlag);
         cpsr = setBit(cpsr, IMask, iFlag);
-        cpsr = setBit(cpsr, VMask, vFlag);
-        cpsr = setBit(cpsr, CMask, cFlag);
-        cpsr = setBit(cpsr, ZMask, zFlag);
-        cpsr = setBit(cpsr, NMask, nFlag);
+        cpsr = setBit(cpsr, VMask, getVFlag());
+        cpsr = setBit(cpsr, CMask, getCFlag());
+        cpsr = setBit(cpsr, ZMask, getZFlag());
+        cpsr = setBit(cpsr, NMask, getNFlag());
         return cpsr;
     }
     
@@ -188,14 +227,17 @@ public final class ARM7TDMI {
         tFlag = ((value & TMask) != 0);
         fFlag = ((value & FMask) != 0);
         iFlag = ((value & IMask) != 0);
+        flagsOperation = FlagsUpToDate;
         vFlag = ((value & VMask) != 0);
         cFlag = ((value & CMask) != 0);
-        zFlag = ((value & ZMask) != 0);
-        nFlag = ((value & NMask) != 0);
+        setZFlag((value & ZMask) != 0);
+        setNFlag((value & NMask) != 0);
     }
     
-    public int getSPSR() { return registers[SPSR]; }
-    public void setSPSR(int value) { registers[SPSR] = value; }
+    public int getSPSR() { return registers[spsrIndex]; }
+    public void setSPSR(int value) { registers[spsrIndex] = value; }
+    public int getSPSRIndex() { return spsrIndex; }
+    public boolean hasSPSR() { return (spsrIndex != SPSR_null); }
     
     public int getRegister(int registerIndex) { return registers[registerIndex]; }
     public void setRegister(int registerIndex, int value) { registers[registerIndex] = value; }
@@ -264,7 +306,7 @@ public final class ARM7TDMI {
             switch (newMode) {
                 case USRMode:
                 case SYSMode:
-                    SPSR = SPSR_null;
+                    spsrIndex = SPSR_null;
                     break;
                 case FIQMode:
                     swapRegisters(R8, R8_fiq);
@@ -274,27 +316,27 @@ public final class ARM7TDMI {
                     swapRegisters(R12, R12_fiq);
                     swapRegisters(R13, R13_fiq);
                     swapRegisters(R14, R14_fiq);
-                    SPSR = SPSR_fiq;
+                    spsrIndex = SPSR_fiq;
                     break;
                 case SVCMode:
                     swapRegisters(R13, R13_svc);
                     swapRegisters(R14, R14_svc);
-                    SPSR = SPSR_svc;
+                    spsrIndex = SPSR_svc;
                     break;
                 case ABTMode:
                     swapRegisters(R13, R13_abt);
                     swapRegisters(R14, R14_abt);
-                    SPSR = SPSR_abt;
+                    spsrIndex = SPSR_abt;
                     break;
                 case IRQMode:
                     swapRegisters(R13, R13_irq);
                     swapRegisters(R14, R14_irq);
-                    SPSR = SPSR_irq;
+                    spsrIndex = SPSR_irq;
                     break;
                 case UNDMode:
                     swapRegisters(R13, R13_und);
                     swapRegisters(R14, R14_und);
-                    SPSR = SPSR_und;
+                    spsrIndex = SPSR_und;
                     break;
             }
             
@@ -324,19 +366,68 @@ public final class ARM7TDMI {
     public boolean getIFlag() { return iFlag; }
     public void setIFlag(boolean b) { iFlag = b; }
     
-    public boolean getVFlag() { return vFlag; }
-    public void setVFlag(boolean b) { vFlag = b; }
+    public boolean getVFlag() {
+        if (flagsOperation != FlagsUpToDate) updateVCFlags();
+        return vFlag;
+    }
     
-    public boolean getCFlag() { return cFlag; }
-    public void setCFlag(boolean b) { cFlag = b; }
+    public void setVFlag(boolean b) {
+        if (flagsOperation != FlagsUpToDate) updateVCFlags();
+        vFlag = b;
+    }
     
-    public boolean getNFlag() { return nFlag; }
-    public void setNFlag(boolean b) { nFlag = b; }
+    public boolean getCFlag() {
+        if (flagsOperation != FlagsUpToDate) updateVCFlags();
+        return cFlag;
+    }
     
-    public boolean getZFlag() { return zFlag; }
-    public void setZFlag(boolean b) { zFlag = b; }
+    public void setCFlag(boolean b) {
+        if (flagsOperation != FlagsUpToDate) updateVCFlags();
+        cFlag = b;
+    }
+    
+    public boolean getNFlag() { return (nValue < 0); }
+    public void setNFlag(boolean b) { nValue = (b ? -1 : 0); }
+    
+    public boolean getZFlag() { return (zValue == 0); }
+    public void setZFlag(boolean b) { zValue = (b ? 0 : 1); }
+    
+    public void setNZFlags(int result) {
+        nValue = result;
+        zValue = result;
+    }
     
     public void setVCFlagsForADD(int operand1, int operand2, int result) {
+        if (LazyFlags) {
+            flagsOperation = FlagsFromADD;
+            flagsOperand1 = operand1;
+            flagsOperand2 = operand2;
+            flagsResult = result;
+        } else {
+            flagsOperation = FlagsUpToDate;
+            computeVCFlagsForADD(operand1, operand2, result);
+        }
+    }
+    
+    public void setVCFlagsForSUB(int operand1, int operand2, int result) {
+        if (LazyFlags) {
+            flagsOperation = FlagsFromSUB;
+            flagsOperand1 = operand1;
+            flagsOperand2 = operand2;
+            flagsResult = result;
+        } else {
+            flagsOperation = FlagsUpToDate;
+            computeVCFlagsForSUB(operand1, operand2, result);
+        }
+    }
+    
+    private void updateVCFlags() {
+        if (flagsOperation == FlagsFromADD) computeVCFlagsForADD(flagsOperand1, flagsOperand2, flagsResult);
+        else computeVCFlagsForSUB(flagsOperand1, flagsOperand2, flagsResult);
+        flagsOperation = FlagsUpToDate;
+    }
+    
+    private void computeVCFlagsForADD(int operand1, int operand2, int result) {
         boolean op1 = (operand1 < 0);
         boolean op2 = (operand2 < 0);
         boolean res = (result < 0);
@@ -345,7 +436,7 @@ public final class ARM7TDMI {
         cFlag = (op1 && op2) || (op1 && !res) || (op2 && !res);
     }
     
-    public void setVCFlagsForSUB(int operand1, int operand2, int result) {
+    private void computeVCFlagsForSUB(int operand1, int operand2, int result) {
         boolean op1 = (operand1 < 0);
         boolean op2 = (operand2 < 0);
         boolean res = (result < 0);
@@ -373,7 +464,7 @@ public final class ARM7TDMI {
     
     public void generateSoftwareInterrupt(int pcValue, int comment) {
         int swi = comment & 0xFF;
-        if (useHLESWI && handleSoftwareInterruptHLE(swi)) {
+        if (useHLESWI && handleSoftwareInterruptHLE(swi, pcValue)) {
             if (traceSWI) {
                 System.out.printf("[SWI-HLE] id=%02X pc=%08X r0=%08X r1=%08X r2=%08X%n",
                         swi, pcValue, getRegister(R0), getRegister(R1), getRegister(R2));
@@ -392,8 +483,17 @@ public final class ARM7TDMI {
         generateSoftwareInterrupt(pcValue, 0);
     }
 
-    private boolean handleSoftwareInterruptHLE(int swi) {
+    private boolean handleSoftwareInterruptHLE(int swi, int pcValue) {
         switch (swi) {
+            case 0x02:
+                halt();
+                return true;
+            case 0x04:
+                hleIntrWait(pcValue, getRegister(R0) != 0, getRegister(R1));
+                return true;
+            case 0x05:
+                hleIntrWait(pcValue, true, VBlankInterruptFlag);
+                return true;
             case 0x0B:
                 hleCpuSet();
                 return true;
@@ -411,6 +511,32 @@ public final class ARM7TDMI {
         }
     }
 
+    private final static int
+            IntrCheckAddress = 0x03007FF8,
+            VBlankInterruptFlag = 0x0001;
+
+    // IntrWait : attend que l'un des drapeaux demands apparaisse dans les
+    // drapeaux d'interruption du BIOS (mis  jour par le gestionnaire du jeu)
+    private void hleIntrWait(int pcValue, boolean discardOld, int flags) {
+        boolean isResumed = (pcValue == intrWaitPC);
+        intrWaitPC = -1;
+        memory.storeHalfWord(IMEAddress, (short) 1);
+        int check = memory.loadHalfWord(IntrCheckAddress);
+        if (discardOld && !isResumed) {
+            memory.storeHalfWord(IntrCheckAddress, (short) (check & ~flags));
+        } else if ((check & flags) != 0) {
+            memory.storeHalfWord(IntrCheckAddress, (short) (check & ~flags));
+            return;
+        }
+
+        // Dormir jusqu' la prochaine interruption, puis rexcuter le SWI
+        // au retour du gestionnaire, cette fois sans effacer les drapeaux
+        intrWaitPC = pcValue;
+        setPC(pcValue - (tFlag ? 2 : 4));
+        flushPipeline();
+        halt();
+    }
+
     private void hleCpuSet() {
         int source = getRegister(R0);
         int destination = getRegister(R1);
@@ -530,7 +656,9 @@ public final class ARM7TDMI {
         }
         // Initialiser les drapeaux
         mFlag = 0;
-        tFlag = vFlag = cFlag = zFlag = nFlag = false;
+        tFlag = vFlag = cFlag = false;
+        flagsOperation = FlagsUpToDate;
+        setNZFlags(1);
         fFlag = iFlag = true;
         setMode(SVCMode);
         // Initialiser le PC
@@ -544,37 +672,306 @@ public final class ARM7TDMI {
         setRegister(R13_svc, 0x03007FE0);
         setRegister(R13_irq, 0x03007FA0);
         
+        halted = false;
+        intrWaitPC = -1;
+        idleLoopDetector.reset();
+        blockCache.clear();
         flushPipeline();
     }
     
     public void run(int cycles) {
-        while (cycles > 0) {
+        this.cycles = cycles;
+        if (halted) {
+            // Aucune instruction jusqu'au prochain vnement : toute la
+            // tranche est consomme d'un coup
+            if (!iorMem.isInterruptRequested()) {
+                this.cycles = 0;
+                return;
+            }
+            halted = false;
+        }
+        BlockCache.Block lastBlock = null;
+        while (this.cycles > 0) {
             ygba.util.MemoryWriteWatch.clearCPUContext();
-            if (!iFlag &&
-                (memory.getByte(IMEAddress) != 0) &&
-                ((memory.getHalfWord(IEAddress) & memory.getHalfWord(IFAddress)) != 0)) {
+            if (isInterruptPending()) {
                 generateNormalInterrupt(getPC() + (tFlag ? 2 : 0)); // (getPC() + 2) & 0xFFFFFFFC
+                this.cycles -= CyclesPerInstruction;
+                lastBlock = null;
+            } else if (useBlockCache) {
+                BlockCache.Block block = getBlock(registers[PC] - (tFlag ? 2 : 4));
+                if (block != null) {
+                    if (block.isReadOnlyLoop && useIdleLoopDetector &&
+                            idleLoopDetector.isIdle(this, block, block == lastBlock)) {
+                        // Attente active : rien ne changera avant le prochain
+                        // vnement, la tranche est consomme comme en HALT
+                        this.cycles = 0;
+                        break;
+                    }
+                    runBlock(block);
+                    lastBlock = block;
+                } else {
+                    step();
+                    this.cycles -= CyclesPerInstruction;
+                    lastBlock = null;
+                }
             } else {
-                int opcode;
-                byte instruction;
-                if (tFlag) { // THUMB state
-                    opcode = fetchTHUMB();
-                    instruction = decodeTHUMB(opcode);
-                    ygba.util.MemoryWriteWatch.setCPUContext(getCurrentPC(), true, opcode);
-                    executeTHUMB(opcode, instruction);
-                    ygba.util.MemoryWriteWatch.clearCPUContext();
-                } else { // ARM state
-                    opcode = fetchARM();
-                    instruction = decodeARM(opcode);
-                    ygba.util.MemoryWriteWatch.setCPUContext(getCurrentPC(), false, opcode);
-                    executeARM(opcode, instruction);
-                    ygba.util.MemoryWriteWatch.clearCPUContext();
+                step();
+                this.cycles -= CyclesPerInstruction;
+            }
+        }
+    }
+    
+    // Cycles restant  excuter dans la tranche en cours (ngatif si elle a
+    // t dpasse) ; le Scheduler peut la raccourcir pendant l'excution
+    public int getRemainingCycles() { return cycles; }
+    public void setRemainingCycles(int cycles) { this.cycles = cycles; }
+    
+    private boolean isInterruptPending() {
+        return (!iFlag && iorMem.isInterruptPending());
+    }
+    
+    // Mode HALT (HALTCNT, SWI Halt/IntrWait) : le CPU dort jusqu' ce
+    // que IE & IF soit non nul, quels que soient IME et le drapeau I
+    public void halt() {
+        if (iorMem.isInterruptRequested()) return;
+        halted = true;
+        cycles = 0;
+    }
+    
+    public boolean isHalted() {
+        return halted;
+    }
+    
+    private void step() {
+        int opcode;
+        if (tFlag) { // THUMB state
+            opcode = fetchTHUMB();
+            ygba.util.MemoryWriteWatch.setCPUContext(getCurrentPC(), true, opcode);
+            thumbOpcodeHandler[opcode].execute(this, memory, opcode);
+        } else { // ARM state
+            opcode = fetchARM();
+            ygba.util.MemoryWriteWatch.setCPUContext(getCurrentPC(), false, opcode);
+            armHandler[decodeARM(opcode)].execute(this, memory, opcode);
+        }
+        ygba.util.MemoryWriteWatch.clearCPUContext();
+    }
+    
+    // ----- Cache de blocs -----
+    
+    private BlockCache.Block getBlock(int address) {
+        BlockCache.Block block = blockCache.get(address, tFlag);
+        if (block == null) {
+            if (!BlockCache.isCacheable(address)) return null;
+            block = buildBlock(address, tFlag);
+            blockCache.put(block);
+        }
+        return block;
+    }
+    
+    // Visible dans le paquetage, comme runBlock, pour BlockCompilerCheck
+    BlockCache.Block buildBlock(int address, boolean thumb) {
+        int maxLength = BlockCache.getMaxLength(address, thumb);
+        int[] opcodes = new int[maxLength];
+        byte[] instructions = new byte[maxLength];
+        InstructionHandler[] handlers = new InstructionHandler[maxLength];
+        int length = 0;
+        
+        while (length < maxLength) {
+            int opcode;
+            boolean endOfBlock;
+            if (thumb) {
+                opcode = memory.getHalfWord(address + (length << 1)) & 0xFFFF;
+                byte instruction = decodeTHUMB(opcode);
+                instructions[length] = instruction;
+                handlers[length] = thumbOpcodeHandler[opcode];
+                endOfBlock = isTHUMBBranch(opcode, instruction);
+            } else {
+                opcode = memory.getWord(address + (length << 2));
+                byte instruction = decodeARM(opcode);
+                instructions[length] = instruction;
+                handlers[length] = armHandler[instruction];
+                endOfBlock = isARMBranch(opcode, instruction);
+            }
+            opcodes[length++] = opcode;
+            if (endOfBlock) break;
+        }
+        
+        if (length < maxLength) {
+            opcodes = java.util.Arrays.copyOf(opcodes, length);
+            instructions = java.util.Arrays.copyOf(instructions, length);
+            handlers = java.util.Arrays.copyOf(handlers, length);
+        }
+        boolean isReadOnlyLoop = isReadOnlyLoop(address, thumb, opcodes, instructions);
+        return new BlockCache.Block(address, thumb, opcodes, instructions, handlers, isReadOnlyLoop);
+    }
+    
+    // Boucle courte se rebranchant au dbut du bloc, dont les autres
+    // instructions ne font que lire la mmoire : candidate  IdleLoopDetector
+    private static boolean isReadOnlyLoop(int address, boolean thumb, int[] opcodes, byte[] instructions) {
+        int last = opcodes.length - 1;
+        if (last + 1 > IdleLoopDetector.MaxLoopLength) return false;
+        int lastAddress = address + last * (thumb ? 2 : 4);
+        int target = thumb ? getTHUMBBranchTarget(lastAddress, opcodes[last], instructions[last])
+                           : getARMBranchTarget(lastAddress, opcodes[last], instructions[last]);
+        if (target != address) return false;
+        
+        for (int i = 0; i < last; i++) {
+            boolean isReadOnly = thumb ? isTHUMBReadOnly(opcodes[i], instructions[i])
+                                       : isARMReadOnly(opcodes[i], instructions[i]);
+            if (!isReadOnly) return false;
+        }
+        return true;
+    }
+    
+    private static int getTHUMBBranchTarget(int address, int opcode, byte instruction) {
+        switch (instruction) {
+            case THUMBInstructionFormat16:
+                return address + 4 + (((byte) opcode) << 1);
+            case THUMBInstructionFormat18:
+                return address + 4 + ((opcode << 21) >> 20);
+            default:
+                return -1;
+        }
+    }
+    
+    private static int getARMBranchTarget(int address, int opcode, byte instruction) {
+        if ((instruction != ARMInstructionFormat4) || ((opcode & 0x01000000) != 0)) return -1; // B seulement
+        return address + 8 + ((opcode << 8) >> 6);
+    }
+    
+    // Ni criture mmoire, ni changement de mode ou d'tat
+    private static boolean isTHUMBReadOnly(int opcode, byte instruction) {
+        switch (instruction) {
+            case THUMBInstructionFormat1:
+            case THUMBInstructionFormat2:
+            case THUMBInstructionFormat3:
+            case THUMBInstructionFormat4:
+            case THUMBInstructionFormat5:
+            case THUMBInstructionFormat6:
+            case THUMBInstructionFormat12:
+            case THUMBInstructionFormat13:
+                return true;
+            case THUMBInstructionFormat7:
+            case THUMBInstructionFormat9:
+            case THUMBInstructionFormat10:
+            case THUMBInstructionFormat11:
+            case THUMBInstructionFormat14:
+            case THUMBInstructionFormat15:
+                return ((opcode & 0x0800) != 0); // Load
+            case THUMBInstructionFormat8:
+                return ((opcode & 0x0C00) != 0); // Tout sauf STRH
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean isARMReadOnly(int opcode, byte instruction) {
+        switch (instruction) {
+            case ARMInstructionFormat5:
+            case ARMInstructionFormat7:
+            case ARMInstructionFormat8:
+                return true;
+            case ARMInstructionFormat9:
+            case ARMInstructionFormat10:
+            case ARMInstructionFormat11:
+                return ((opcode & 0x00100000) != 0); // Load
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean isTHUMBBranch(int opcode, byte instruction) {
+        switch (instruction) {
+            case THUMBInstructionFormat5:
+                return (((opcode & 0x0300) == 0x0300) || ((opcode & 0x0087) == 0x0087));
+            case THUMBInstructionFormat14:
+                return ((opcode & 0x0900) == 0x0900);
+            case THUMBInstructionFormat16:
+            case THUMBInstructionFormat17:
+            case THUMBInstructionFormat18:
+            case THUMBInstructionFormat19:
+            case THUMBInstructionFormatUnd:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean isARMBranch(int opcode, byte instruction) {
+        switch (instruction) {
+            case ARMInstructionFormat5:
+            case ARMInstructionFormat9:
+            case ARMInstructionFormat10:
+                return (((opcode & 0x0000F000) == 0x0000F000) || ((opcode & 0x000F0000) == 0x000F0000));
+            case ARMInstructionFormat11:
+                return ((opcode & 0x00008000) != 0);
+            case ARMInstructionFormat3:
+            case ARMInstructionFormat4:
+            case ARMInstructionFormat6:
+            case ARMInstructionFormat13:
+            case ARMInstructionFormat17:
+            case ARMInstructionFormatCoP:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    // Le pipeline n'est pas aliment pendant un bloc : il est recharg  la
+    // sortie si aucune instruction ne l'a vid
+    void runBlock(BlockCache.Block block) {
+        int[] opcodes = block.opcodes;
+        InstructionHandler[] handlers = block.handlers;
+        int length = opcodes.length;
+        boolean thumb = block.thumb;
+        int instructionSize = thumb ? 2 : 4;
+        int address = block.address;
+        
+        if (useRecompiler && (thumb || useARMRecompiler)) {
+            CompiledBlock compiled = block.compiled;
+            if (compiled != null) {
+                if (!ygba.util.MemoryWriteWatch.isEnabled()) {
+                    int executed = compiled.execute(this, memory);
+                    address += executed * instructionSize;
+                    if ((registers[PC] == address + instructionSize) && (tFlag == thumb)) {
+                        registers[PC] = address;
+                        flushPipeline();
+                    }
+                    return;
                 }
+            } else if (block.isCompilable && (++block.executionCount == recompileThreshold)) {
+                BlockCompiler.submit(block);
             }
+        }
+        
+        for (int i = 0; ; i++) {
+            int nextPC = address + (instructionSize << 1);
+            registers[PC] = nextPC;
+            ygba.util.MemoryWriteWatch.setCPUContext(address, thumb, opcodes[i]);
+            handlers[i].execute(this, memory, opcodes[i]);
+            ygba.util.MemoryWriteWatch.clearCPUContext();
             cycles -= CyclesPerInstruction;
+            
+            // Branchement, exception ou changement d'tat : le pipeline a t vid
+            if ((registers[PC] != nextPC) || (tFlag != thumb)) return;
+            
+            address += instructionSize;
+            if ((i + 1 == length) || (cycles <= 0) || !block.valid || isInterruptPending()) {
+                registers[PC] = address;
+                flushPipeline();
+                return;
+            }
         }
     }
     
+    // Appel par les blocs compils aprs chaque instruction : dcompte ses
+    // cycles et applique les mmes conditions de sortie que runBlock
+    boolean canContinueBlock(BlockCache.Block block, int nextPC) {
+        cycles -= CyclesPerInstruction;
+        return ((registers[PC] == nextPC) && (tFlag == block.thumb) &&
+                (cycles > 0) && block.valid && !isInterruptPending());
+    }
+    
     // ----- Gestion du Pipeline -----
     
     public void flushPipeline() {
@@ -620,10 +1017,11 @@ public final class ARM7TDMI {
             THUMBInstructionFormat19  = 0x13,
             THUMBInstructionFormatUnd = 0x7F;
     
-    private static byte[] thumbInstruction;
+    // Tables de dcodage : construites une seule fois, puis partages en
+    // lecture seule par toutes les instances
+    private final static byte[] thumbInstruction = new byte[0x100];
     
     private static void initTHUMB() {
-        thumbInstruction = new byte[0x100];
         byte instruction;
         
         for (short opcode = 0; opcode < thumbInstruction.length; opcode++) {
@@ -665,29 +1063,152 @@ public final class ARM7TDMI {
         return thumbInstruction[offset];
     }
     
-    private void executeTHUMB(int opcode, byte instruction) {
+    private final static InstructionHandler[] thumbHandler = new InstructionHandler[0x80];
+    
+    static {
+        thumbHandler[THUMBInstructionFormat1] = THUMB_1::execute;
+        thumbHandler[THUMBInstructionFormat2] = THUMB_2::execute;
+        thumbHandler[THUMBInstructionFormat3] = THUMB_3::execute;
+        thumbHandler[THUMBInstructionFormat4] = THUMB_4::execute;
+        thumbHandler[THUMBInstructionFormat5] = THUMB_5::execute;
+        thumbHandler[THUMBInstructionFormat6] = THUMB_6::execute;
+        thumbHandler[THUMBInstructionFormat7] = THUMB_7::execute;
+        thumbHandler[THUMBInstructionFormat8] = THUMB_8::execute;
+        thumbHandler[THUMBInstructionFormat9] = THUMB_9::execute;
+        thumbHandler[THUMBInstructionFormat10] = THUMB_10::execute;
+        thumbHandler[THUMBInstructionFormat11] = THUMB_11::execute;
+        thumbHandler[THUMBInstructionFormat12] = THUMB_12::execute;
+        thumbHandler[THUMBInstructionFormat13] = THUMB_13::execute;
+        thumbHandler[THUMBInstructionFormat14] = THUMB_14::execute;
+        thumbHandler[THUMBInstructionFormat15] = THUMB_15::execute;
+        thumbHandler[THUMBInstructionFormat16] = THUMB_16::execute;
+        thumbHandler[THUMBInstructionFormat17] = THUMB_17::execute;
+        thumbHandler[THUMBInstructionFormat18] = THUMB_18::execute;
+        thumbHandler[THUMBInstructionFormat19] = THUMB_19::execute;
+        thumbHandler[THUMBInstructionFormatUnd] = THUMB_Und::execute;
+    }
+    
+    // Table des 65536 opcodes THUMB : chaque entre dsigne directement le
+    // traitement de la sous-opration, sans second dcodage  l'excution
+    private final static InstructionHandler[] thumbOpcodeHandler = new InstructionHandler[0x10000];
+    
+    static {
+        initTHUMB();
+        for (int opcode = 0; opcode < thumbOpcodeHandler.length; opcode++) {
+            thumbOpcodeHandler[opcode] = getTHUMBHandler(opcode);
+        }
+    }
+    
+    private static InstructionHandler getTHUMBHandler(int opcode) {
+        byte instruction = decodeTHUMB(opcode);
         switch (instruction) {
-            case THUMBInstructionFormat1:   THUMB_1.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat2:   THUMB_2.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat3:   THUMB_3.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat4:   THUMB_4.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat5:   THUMB_5.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat6:   THUMB_6.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat7:   THUMB_7.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat8:   THUMB_8.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat9:   THUMB_9.execute(this, memory, opcode);   break;
-            case THUMBInstructionFormat10:  THUMB_10.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat11:  THUMB_11.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat12:  THUMB_12.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat13:  THUMB_13.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat14:  THUMB_14.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat15:  THUMB_15.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat16:  THUMB_16.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat17:  THUMB_17.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat18:  THUMB_18.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormat19:  THUMB_19.execute(this, memory, opcode);  break;
-            case THUMBInstructionFormatUnd: THUMB_Und.execute(this, memory, opcode); break;
+            case THUMBInstructionFormat1:
+                switch (opcode & 0x1800) {
+                    case 0x0000: return THUMB_1::executeLSL;
+                    case 0x0800: return THUMB_1::executeLSR;
+                    case 0x1000: return THUMB_1::executeASR;
+                }
+                break;
+            case THUMBInstructionFormat2:
+                switch (opcode & 0x0600) {
+                    case 0x0000: return THUMB_2::executeADDRegister;
+                    case 0x0200: return THUMB_2::executeSUBRegister;
+                    case 0x0400: return THUMB_2::executeADDImmediate;
+                    case 0x0600: return THUMB_2::executeSUBImmediate;
+                }
+                break;
+            case THUMBInstructionFormat3:
+                switch (opcode & 0x1800) {
+                    case 0x0000: return THUMB_3::executeMOV;
+                    case 0x0800: return THUMB_3::executeCMP;
+                    case 0x1000: return THUMB_3::executeADD;
+                    case 0x1800: return THUMB_3::executeSUB;
+                }
+                break;
+            case THUMBInstructionFormat4:
+                switch (opcode & 0x03C0) {
+                    case 0x0000: return THUMB_4::executeAND;
+                    case 0x0040: return THUMB_4::executeEOR;
+                    case 0x0080: return THUMB_4::executeLSL;
+                    case 0x00C0: return THUMB_4::executeLSR;
+                    case 0x0100: return THUMB_4::executeASR;
+                    case 0x0140: return THUMB_4::executeADC;
+                    case 0x0180: return THUMB_4::executeSBC;
+                    case 0x01C0: return THUMB_4::executeROR;
+                    case 0x0200: return THUMB_4::executeTST;
+                    case 0x0240: return THUMB_4::executeNEG;
+                    case 0x0280: return THUMB_4::executeCMP;
+                    case 0x02C0: return THUMB_4::executeCMN;
+                    case 0x0300: return THUMB_4::executeORR;
+                    case 0x0340: return THUMB_4::executeMUL;
+                    case 0x0380: return THUMB_4::executeBIC;
+                    case 0x03C0: return THUMB_4::executeMVN;
+                }
+                break;
+            case THUMBInstructionFormat5:
+                switch (opcode & 0x0300) {
+                    case 0x0000: return THUMB_5::executeADD;
+                    case 0x0100: return THUMB_5::executeCMP;
+                    case 0x0200: return THUMB_5::executeMOV;
+                    case 0x0300: return THUMB_5::executeBX;
+                }
+                break;
+            case THUMBInstructionFormat7:
+                switch (opcode & 0x0C00) {
+                    case 0x0000: return THUMB_7::executeSTR;
+                    case 0x0400: return THUMB_7::executeSTRB;
+                    case 0x0800: return THUMB_7::executeLDR;
+                    case 0x0C00: return THUMB_7::executeLDRB;
+                }
+                break;
+            case THUMBInstructionFormat8:
+                switch (opcode & 0x0C00) {
+                    case 0x0000: return THUMB_8::executeSTRH;
+                    case 0x0400: return THUMB_8::executeLDSB;
+                    case 0x0800: return THUMB_8::executeLDRH;
+                    case 0x0C00: return THUMB_8::executeLDSH;
+                }
+                break;
+            case THUMBInstructionFormat9:
+                switch (opcode & 0x1800) {
+                    case 0x0000: return THUMB_9::executeSTR;
+                    case 0x0800: return THUMB_9::executeLDR;
+                    case 0x1000: return THUMB_9::executeSTRB;
+                    case 0x1800: return THUMB_9::executeLDRB;
+                }
+                break;
+            case THUMBInstructionFormat10:
+                switch (opcode & 0x0800) {
+                    case 0x0000: return THUMB_10::executeSTRH;
+                    case 0x0800: return THUMB_10::executeLDRH;
+                }
+                break;
+            case THUMBInstructionFormat11:
+                switch (opcode & 0x0800) {
+                    case 0x0000: return THUMB_11::executeSTR;
+                    case 0x0800: return THUMB_11::executeLDR;
+                }
+                break;
+            case THUMBInstructionFormat16:
+                switch (opcode & 0x0F00) {
+                    case 0x0000: return THUMB_16::executeBEQ;
+                    case 0x0100: return THUMB_16::executeBNE;
+                    case 0x0200: return THUMB_16::executeBCS;
+                    case 0x0300: return THUMB_16::executeBCC;
+                    case 0x0400: return THUMB_16::executeBMI;
+                    case 0x0500: return THUMB_16::executeBPL;
+                    case 0x0600: return THUMB_16::executeBVS;
+                    case 0x0700: return THUMB_16::executeBVC;
+                    case 0x0800: return THUMB_16::executeBHI;
+                    case 0x0900: return THUMB_16::executeBLS;
+                    case 0x0A00: return THUMB_16::executeBGE;
+                    case 0x0B00: return THUMB_16::executeBLT;
+                    case 0x0C00: return THUMB_16::executeBGT;
+                    case 0x0D00: return THUMB_16::executeBLE;
+                }
+                break;
         }
+        return thumbHandler[instruction];
     }
     
     public String disassembleTHUMB(int offset) {
@@ -734,10 +1255,13 @@ public final class ARM7TDMI {
             ARMInstructionFormat17 = 0x11,
             ARMInstructionFormatCoP = 0x12;
     
-    private static byte[] armInstruction;
+    private final static byte[] armInstruction = new byte[0x10000];
+    
+    static {
+        initARM();
+    }
     
     private static void initARM() {
-        armInstruction = new byte[0x10000];
         byte instruction;
         
         for (int i = 0; i < armInstruction.length; i++) {
@@ -821,22 +1345,22 @@ public final class ARM7TDMI {
         return armInstruction[offset];
     }
     
-    private void executeARM(int opcode, byte instruction) {
-        switch (instruction) {
-            case ARMInstructionFormat3:   ARM_3.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat4:   ARM_4.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat5:   ARM_5.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat6:   ARM_6.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat7:   ARM_7.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat8:   ARM_8.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat9:   ARM_9.execute(this, memory, opcode);   break;
-            case ARMInstructionFormat10:  ARM_10.execute(this, memory, opcode);  break;
-            case ARMInstructionFormat11:  ARM_11.execute(this, memory, opcode);  break;
-            case ARMInstructionFormat12:  ARM_12.execute(this, memory, opcode);  break;
-            case ARMInstructionFormat13:  ARM_13.execute(this, memory, opcode);  break;
-            case ARMInstructionFormat17:  ARM_17.execute(this, memory, opcode);  break;
-            case ARMInstructionFormatCoP: ARM_CP.execute(this, memory, opcode); break;
-        }
+    private final static InstructionHandler[] armHandler = new InstructionHandler[0x13];
+    
+    static {
+        armHandler[ARMInstructionFormat3] = ARM_3::execute;
+        armHandler[ARMInstructionFormat4] = ARM_4::execute;
+        armHandler[ARMInstructionFormat5] = ARM_5::execute;
+        armHandler[ARMInstructionFormat6] = ARM_6::execute;
+        armHandler[ARMInstructionFormat7] = ARM_7::execute;
+        armHandler[ARMInstructionFormat8] = ARM_8::execute;
+        armHandler[ARMInstructionFormat9] = ARM_9::execute;
+        armHandler[ARMInstructionFormat10] = ARM_10::execute;
+        armHandler[ARMInstructionFormat11] = ARM_11::execute;
+        armHandler[ARMInstructionFormat12] = ARM_12::execute;
+        armHandler[ARMInstructionFormat13] = ARM_13::execute;
+        armHandler[ARMInstructionFormat17] = ARM_17::execute;
+        armHandler[ARMInstructionFormatCoP] = ARM_CP::execute;
     }
     
     public String disassembleARM(int offset) {
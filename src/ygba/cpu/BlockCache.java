@@ -0,0 +1,188 @@
+package ygba.cpu;
+
+/**
+ * Pre-decoded basic blocks keyed by start address and CPU state.
+ * Only the BIOS, the Game Pak ROM, IWRAM and EWRAM are cached. A block
+ * stops at the first instruction that may write the PC, and never crosses
+ * a 4KB page; stores to IWRAM/EWRAM drop the blocks overlapping the
+ * written 256-byte line.
+ */
+public final class BlockCache {
+
+    final static class Block {
+        final int address;
+        final int endAddress;
+        final boolean thumb;
+        final int[] opcodes;
+        final byte[] instructions;
+        final InstructionHandler[] handlers;
+        final boolean isReadOnlyLoop;
+        boolean valid;
+        int executionCount;
+        volatile CompiledBlock compiled;
+        // Cleared by BlockCompiler when the block cannot be compiled
+        volatile boolean isCompilable = true;
+
+        Block(int address, boolean thumb, int[] opcodes, byte[] instructions, InstructionHandler[] handlers,
+              boolean isReadOnlyLoop) {
+            this.address = address;
+            this.endAddress = address + opcodes.length * (thumb ? 2 : 4);
+            this.thumb = thumb;
+            this.opcodes = opcodes;
+            this.instructions = instructions;
+            this.handlers = handlers;
+            this.isReadOnlyLoop = isReadOnlyLoop;
+            this.valid = true;
+        }
+    }
+
+    public final static int MaxBlockLength = 64;
+
+    private final static int
+            PageShift = 12,
+            PageSize = 1 << PageShift,
+            LineShift = 8,
+            LineSize = 1 << LineShift;
+
+    private final static int
+            BIOSPages = 0,
+            EWRAMPages = BIOSPages + (0x4000 >>> PageShift),
+            IWRAMPages = EWRAMPages + (0x40000 >>> PageShift),
+            ROM1Pages = IWRAMPages + (0x8000 >>> PageShift),
+            ROM2Pages = ROM1Pages + (0x1000000 >>> PageShift),
+            NbPages = ROM2Pages + (0x1000000 >>> PageShift);
+
+    private final static int
+            EWRAMLines = 0,
+            IWRAMLines = EWRAMLines + (0x40000 >>> LineShift),
+            NbLines = IWRAMLines + (0x8000 >>> LineShift);
+
+    private final Block[][] thumbPages, armPages;
+    private final boolean[] codeLines;
+
+
+    public BlockCache() {
+        thumbPages = new Block[NbPages][];
+        armPages = new Block[NbPages][];
+        codeLines = new boolean[NbLines];
+    }
+
+
+    private static int getPageIndex(int address) {
+        switch ((address >>> 24) & 0x0F) {
+            case 0x00: return BIOSPages + ((address & 0x00003FFF) >>> PageShift);
+            case 0x02: return EWRAMPages + ((address & 0x0003FFFF) >>> PageShift);
+            case 0x03: return IWRAMPages + ((address & 0x00007FFF) >>> PageShift);
+            case 0x08: case 0x0A: case 0x0C: return ROM1Pages + ((address & 0x00FFFFFF) >>> PageShift);
+            case 0x09: case 0x0B: case 0x0D: return ROM2Pages + ((address & 0x00FFFFFF) >>> PageShift);
+            default: return -1;
+        }
+    }
+
+    private static int getLineIndex(int address) {
+        switch ((address >>> 24) & 0x0F) {
+            case 0x02: return EWRAMLines + ((address & 0x0003FFFF) >>> LineShift);
+            case 0x03: return IWRAMLines + ((address & 0x00007FFF) >>> LineShift);
+            default: return -1;
+        }
+    }
+
+    // Folds RAM mirrors so that blocks and stores can be compared
+    private static int getInternalAddress(int address) {
+        switch ((address >>> 24) & 0x0F) {
+            case 0x02: return address & 0x0203FFFF;
+            case 0x03: return address & 0x03007FFF;
+            default: return address;
+        }
+    }
+
+    private static int getSlotIndex(int address, boolean thumb) {
+        return (address & (PageSize - 1)) >>> (thumb ? 1 : 2);
+    }
+
+    static boolean isCacheable(int address) {
+        return (getPageIndex(address) >= 0);
+    }
+
+    static int getMaxLength(int address, boolean thumb) {
+        int remaining = (PageSize - (address & (PageSize - 1))) >>> (thumb ? 1 : 2);
+        return Math.min(remaining, MaxBlockLength);
+    }
+
+
+    Block get(int address, boolean thumb) {
+        int page = getPageIndex(address);
+        if (page < 0) return null;
+        Block[] slots = thumb ? thumbPages[page] : armPages[page];
+        if (slots == null) return null;
+        Block block = slots[getSlotIndex(address, thumb)];
+        if ((block == null) || (block.address != address)) return null;
+        return block;
+    }
+
+    void put(Block block) {
+        int page = getPageIndex(block.address);
+        if (page < 0) return;
+        Block[][] pages = block.thumb ? thumbPages : armPages;
+        if (pages[page] == null) pages[page] = new Block[PageSize >>> (block.thumb ? 1 : 2)];
+        Block[] slots = pages[page];
+        int slot = getSlotIndex(block.address, block.thumb);
+        if (slots[slot] != null) slots[slot].valid = false;
+        slots[slot] = block;
+
+        int lastLine = getLineIndex(block.endAddress - 1);
+        if (lastLine < 0) return;
+        for (int line = getLineIndex(block.address); line <= lastLine; line++) {
+            codeLines[line] = true;
+        }
+    }
+
+    public void invalidate(int address) {
+        int line = getLineIndex(address);
+        if ((line < 0) || !codeLines[line]) return;
+        codeLines[line] = false;
+
+        int page = getPageIndex(address);
+        int lineStart = getInternalAddress(address) & ~(LineSize - 1);
+        int lineEnd = lineStart + LineSize;
+        int scanStart = Math.max(lineStart & ~(PageSize - 1), lineStart - MaxBlockLength * 4);
+
+        invalidate(thumbPages[page], true, scanStart, lineStart, lineEnd);
+        invalidate(armPages[page], false, scanStart, lineStart, lineEnd);
+    }
+
+    private static void invalidate(Block[] slots, boolean thumb, int scanStart, int lineStart, int lineEnd) {
+        if (slots == null) return;
+        int last = getSlotIndex(lineEnd - 1, thumb);
+        for (int i = getSlotIndex(scanStart, thumb); i <= last; i++) {
+            Block block = slots[i];
+            if (block == null) continue;
+            int start = getInternalAddress(block.address);
+            int end = start + (block.endAddress - block.address);
+            if ((start < lineEnd) && (end > lineStart)) {
+                block.valid = false;
+                slots[i] = null;
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < NbPages; i++) {
+            invalidate(thumbPages[i]);
+            invalidate(armPages[i]);
+            thumbPages[i] = null;
+            armPages[i] = null;
+        }
+        for (int i = 0; i < NbLines; i++) {
+            codeLines[i] = false;
+        }
+    }
+
+    private static void invalidate(Block[] slots) {
+        if (slots == null) return;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) slots[i].valid = false;
+        }
+    }
+
+}
@@ -0,0 +1,333 @@
+package ygba.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Translates hot blocks into JVM classes on a background thread.
+ * The generated execute() calls the block's handlers (the per-opcode THUMB
+ * handlers, the ARM_n handlers) with constant opcodes, one after the other.
+ * Each handler is held in a static final field of the generated class, so
+ * that HotSpot sees a constant receiver, inlines the handler and folds its
+ * decoding. After each instruction it accounts its cycles and performs the
+ * same checks as ARM7TDMI.runBlock (PC, state, remaining cycles, block
+ * validity, pending interrupt).
+ * A block that fails to compile is left to the interpreter; the failure is
+ * reported with -Dygba.trace.jit=true.
+ */
+final class BlockCompiler implements Runnable {
+
+    private final static int
+            ACC_PUBLIC = 0x0001,
+            ACC_PRIVATE = 0x0002,
+            ACC_STATIC = 0x0008,
+            ACC_FINAL = 0x0010,
+            ACC_SUPER = 0x0020;
+
+    private final static int
+            OP_ALOAD_0 = 0x2A,
+            OP_ALOAD_1 = 0x2B,
+            OP_ALOAD_2 = 0x2C,
+            OP_AALOAD = 0x32,
+            OP_ASTORE_0 = 0x4B,
+            OP_SIPUSH = 0x11,
+            OP_LDC_W = 0x13,
+            OP_POP = 0x57,
+            OP_IFNE = 0x9A,
+            OP_IRETURN = 0xAC,
+            OP_RETURN = 0xB1,
+            OP_GETSTATIC = 0xB2,
+            OP_PUTSTATIC = 0xB3,
+            OP_INVOKEVIRTUAL = 0xB6,
+            OP_INVOKESPECIAL = 0xB7,
+            OP_INVOKESTATIC = 0xB8,
+            OP_INVOKEINTERFACE = 0xB9;
+
+    private final static String
+            CompiledBlockClass = "ygba/cpu/CompiledBlock",
+            CPUClass = "ygba/cpu/ARM7TDMI",
+            HandlerClass = "ygba/cpu/InstructionHandler",
+            HandlerType = "Lygba/cpu/InstructionHandler;",
+            HandlerDescriptor = "(Lygba/cpu/ARM7TDMI;Lygba/memory/MemoryInterface;I)V",
+            GetHandlersDescriptor = "(Ljava/lang/Class;)[Lygba/cpu/InstructionHandler;",
+            ExecuteDescriptor = "(Lygba/cpu/ARM7TDMI;Lygba/memory/MemoryInterface;)I";
+
+    private final static boolean TraceJIT = Boolean.getBoolean("ygba.trace.jit");
+
+    private static BlockCompiler compiler;
+
+    private final LinkedBlockingQueue<BlockCache.Block> queue;
+    private final AtomicInteger compiledCount;
+
+
+    private BlockCompiler() {
+        queue = new LinkedBlockingQueue<BlockCache.Block>();
+        compiledCount = new AtomicInteger(0);
+    }
+
+    static synchronized void submit(BlockCache.Block block) {
+        if (compiler == null) {
+            compiler = new BlockCompiler();
+            Thread thread = new Thread(compiler, "ygba-block-compiler");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+        compiler.queue.offer(block);
+    }
+
+    public void run() {
+        while (true) {
+            BlockCache.Block block;
+            try {
+                block = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!block.valid) continue;
+            try {
+                block.compiled = compile(block, compiledCount.incrementAndGet());
+            } catch (Exception | LinkageError e) {
+                // LinkageError: the generated class was rejected (format,
+                // verification or initialization error)
+                block.isCompilable = false;
+                if (TraceJIT) {
+                    System.out.printf("[JIT] failed to compile block %08X: %s%n", block.address, e);
+                }
+            }
+        }
+    }
+
+
+    private final static class BlockClassLoader extends ClassLoader {
+        private final InstructionHandler[] handlers;
+
+        BlockClassLoader(InstructionHandler[] handlers) {
+            super(BlockCompiler.class.getClassLoader());
+            this.handlers = handlers;
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+    static CompiledBlock compile(BlockCache.Block block, int id) throws Exception {
+        String className = String.format("ygba/cpu/Block_%08X_%s_%d", block.address, block.thumb ? "T" : "A", id);
+        byte[] bytecode = generate(block, className);
+        // One loader per class, so that the class can be unloaded with its block
+        Class<?> blockClass = new BlockClassLoader(block.handlers).define(className.replace('/', '.'), bytecode);
+        CompiledBlock compiledBlock = (CompiledBlock) blockClass.getConstructor().newInstance();
+        compiledBlock.block = block;
+        return compiledBlock;
+    }
+
+    // Handlers of a generated class, read once by its static initializer
+    static InstructionHandler[] getHandlers(Class<?> blockClass) {
+        return ((BlockClassLoader) blockClass.getClassLoader()).handlers;
+    }
+
+    private static byte[] generate(BlockCache.Block block, String className) throws IOException {
+        ConstantPool cp = new ConstantPool();
+        int thisClass = cp.classRef(className);
+        int superClass = cp.classRef(CompiledBlockClass);
+        int superInit = cp.methodRef(CompiledBlockClass, "<init>", "()V");
+        int setPC = cp.methodRef(CPUClass, "setPC", "(I)V");
+        int proceed = cp.methodRef(CompiledBlockClass, "proceed", "(Lygba/cpu/ARM7TDMI;I)Z");
+        int getHandlers = cp.methodRef(CompiledBlockClass, "getHandlers", GetHandlersDescriptor);
+        int execute = cp.interfaceMethodRef(HandlerClass, "execute", HandlerDescriptor);
+
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+        int instructionSize = block.thumb ? 2 : 4;
+        int length = block.opcodes.length;
+        int[] handlerFields = new int[length];
+        for (int i = 0; i < length; i++) {
+            handlerFields[i] = cp.fieldRef(className, "h" + i, HandlerType);
+        }
+
+        // <clinit>: handler i goes to the static final field hi
+        ByteArrayOutputStream clinitBytes = new ByteArrayOutputStream();
+        DataOutputStream clinit = new DataOutputStream(clinitBytes);
+        clinit.writeByte(OP_LDC_W);
+        clinit.writeShort(thisClass);
+        clinit.writeByte(OP_INVOKESTATIC);
+        clinit.writeShort(getHandlers);
+        clinit.writeByte(OP_ASTORE_0);
+        for (int i = 0; i < length; i++) {
+            clinit.writeByte(OP_ALOAD_0);
+            clinit.writeByte(OP_SIPUSH);
+            clinit.writeShort(i);
+            clinit.writeByte(OP_AALOAD);
+            clinit.writeByte(OP_PUTSTATIC);
+            clinit.writeShort(handlerFields[i]);
+        }
+        clinit.writeByte(OP_RETURN);
+        clinit.flush();
+
+        for (int i = 0; i < length; i++) {
+            int nextPC = block.address + (i + 2) * instructionSize;
+
+            code.writeByte(OP_ALOAD_1);
+            code.writeByte(OP_LDC_W);
+            code.writeShort(cp.integer(nextPC));
+            code.writeByte(OP_INVOKEVIRTUAL);
+            code.writeShort(setPC);
+
+            code.writeByte(OP_GETSTATIC);
+            code.writeShort(handlerFields[i]);
+            code.writeByte(OP_ALOAD_1);
+            code.writeByte(OP_ALOAD_2);
+            code.writeByte(OP_LDC_W);
+            code.writeShort(cp.integer(block.opcodes[i]));
+            code.writeByte(OP_INVOKEINTERFACE);
+            code.writeShort(execute);
+            code.writeByte(4); // Argument slots, receiver included
+            code.writeByte(0);
+
+            code.writeByte(OP_ALOAD_0);
+            code.writeByte(OP_ALOAD_1);
+            code.writeByte(OP_LDC_W);
+            code.writeShort(cp.integer(nextPC));
+            code.writeByte(OP_INVOKEVIRTUAL);
+            code.writeShort(proceed);
+            if (i + 1 < length) {
+                code.writeByte(OP_IFNE);
+                code.writeShort(3 + 3 + 1);
+            } else {
+                code.writeByte(OP_POP);
+            }
+            code.writeByte(OP_SIPUSH);
+            code.writeShort(i + 1);
+            code.writeByte(OP_IRETURN);
+        }
+        code.flush();
+
+        int codeName = cp.utf8("Code");
+        int initName = cp.utf8("<init>");
+        int initDescriptor = cp.utf8("()V");
+        int clinitName = cp.utf8("<clinit>");
+        int handlerType = cp.utf8(HandlerType);
+        int executeName = cp.utf8("execute");
+        int executeDescriptor = cp.utf8(ExecuteDescriptor);
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(classBytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49); // Java 5 class file: no StackMapTable needed
+        cp.write(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(length); // fields
+        for (int i = 0; i < length; i++) {
+            out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+            out.writeShort(cp.utf8("h" + i));
+            out.writeShort(handlerType);
+            out.writeShort(0); // attributes
+        }
+        out.writeShort(3); // methods
+
+        byte[] initCode = {
+            (byte) OP_ALOAD_0,
+            (byte) OP_INVOKESPECIAL, (byte) (superInit >>> 8), (byte) superInit,
+            (byte) OP_RETURN
+        };
+        writeMethod(out, ACC_PUBLIC, initName, initDescriptor, codeName, 1, 1, initCode);
+        writeMethod(out, ACC_STATIC, clinitName, initDescriptor, codeName, 2, 1, clinitBytes.toByteArray());
+        writeMethod(out, ACC_PUBLIC, executeName, executeDescriptor, codeName, 4, 3, codeBytes.toByteArray());
+
+        out.writeShort(0); // attributes
+        out.flush();
+        return classBytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+
+    private final static class ConstantPool {
+        private final static int
+                CONSTANT_Utf8 = 1,
+                CONSTANT_Integer = 3,
+                CONSTANT_Class = 7,
+                CONSTANT_Fieldref = 9,
+                CONSTANT_Methodref = 10,
+                CONSTANT_InterfaceMethodref = 11,
+                CONSTANT_NameAndType = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private final HashMap<String, Integer> entries = new HashMap<String, Integer>();
+        private int count = 1;
+
+        private int add(String key, int tag, int value1, int value2, String utf8) throws IOException {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            data.writeByte(tag);
+            switch (tag) {
+                case CONSTANT_Utf8: data.writeUTF(utf8); break;
+                case CONSTANT_Integer: data.writeInt(value1); break;
+                case CONSTANT_Class: data.writeShort(value1); break;
+                default: data.writeShort(value1); data.writeShort(value2); break;
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        int utf8(String s) throws IOException {
+            return add("U" + s, CONSTANT_Utf8, 0, 0, s);
+        }
+
+        int integer(int value) throws IOException {
+            return add("I" + value, CONSTANT_Integer, value, 0, null);
+        }
+
+        int classRef(String name) throws IOException {
+            return add("C" + name, CONSTANT_Class, utf8(name), 0, null);
+        }
+
+        private int memberRef(String key, int tag, String owner, String name, String descriptor) throws IOException {
+            int nameAndType = add("N" + name + descriptor, CONSTANT_NameAndType, utf8(name), utf8(descriptor), null);
+            return add(key + owner + "." + name + descriptor, tag, classRef(owner), nameAndType, null);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return memberRef("F", CONSTANT_Fieldref, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return memberRef("M", CONSTANT_Methodref, owner, name, descriptor);
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) throws IOException {
+            return memberRef("J", CONSTANT_InterfaceMethodref, owner, name, descriptor);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            data.flush();
+            out.writeShort(count);
+            out.write(bytes.toByteArray());
+        }
+    }
+
+}
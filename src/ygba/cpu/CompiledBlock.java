@@ -0,0 +1,29 @@
+package ygba.cpu;
+
+import ygba.memory.MemoryInterface;
+
+/**
+ * Base class of the blocks translated to JVM bytecode by BlockCompiler.
+ * execute() runs the block's instructions in order and returns how many
+ * were executed before the block had to be left.
+ */
+public abstract class CompiledBlock {
+
+    BlockCache.Block block;
+
+
+    protected CompiledBlock() {
+    }
+
+
+    public abstract int execute(ARM7TDMI cpu, MemoryInterface memory);
+
+    protected static InstructionHandler[] getHandlers(Class<?> blockClass) {
+        return BlockCompiler.getHandlers(blockClass);
+    }
+
+    protected final boolean proceed(ARM7TDMI cpu, int nextPC) {
+        return cpu.canContinueBlock(block, nextPC);
+    }
+
+}
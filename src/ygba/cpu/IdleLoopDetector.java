@@ -0,0 +1,87 @@
+package ygba.cpu;
+
+import ygba.memory.IORegMemory;
+
+import java.util.HashSet;
+
+/**
+ * Recognizes guest busy-wait loops, such as polling VCOUNT, DISPSTAT or a
+ * RAM flag set by the interrupt handler.
+ * A candidate is a short block that branches back to its own start and
+ * whose other instructions only read memory (see ARM7TDMI.isReadOnlyLoop).
+ * When the register file and the flags are the same at two consecutive
+ * loop heads, the loop will keep spinning until something outside the CPU
+ * changes what it reads: a scheduled event (scanline, VBlank, timer
+ * overflow) or an interrupt, which is itself raised by an event. The CPU
+ * can then skip straight to the next event. A timer counter changes
+ * without any event, so an iteration that read one is never idle.
+ * With -Dygba.trace.idleloops=true, each detected loop is reported once.
+ */
+final class IdleLoopDetector {
+
+    final static int MaxLoopLength = 16;
+
+    private final static boolean TraceIdleLoops = Boolean.getBoolean("ygba.trace.idleloops");
+
+    private IORegMemory iorMem;
+
+    private BlockCache.Block headBlock;
+    private final int[] headRegisters;
+    private int headCPSR;
+    private int headTimerReadCount;
+
+    private final HashSet<Integer> reportedLoops;
+
+
+    IdleLoopDetector() {
+        headRegisters = new int[16];
+        reportedLoops = new HashSet<Integer>();
+    }
+
+    void connectToIORegMemory(IORegMemory iorMem) {
+        this.iorMem = iorMem;
+    }
+
+    void reset() {
+        headBlock = null;
+        reportedLoops.clear();
+    }
+
+
+    // Called at the head of a read-only loop block; isLooping tells that the
+    // block which just ran is this one, i.e. a whole iteration was executed
+    boolean isIdle(ARM7TDMI cpu, BlockCache.Block block, boolean isLooping) {
+        int[] registers = cpu.registers;
+        int cpsr = cpu.getCPSR();
+        int timerReadCount = iorMem.getTimerReadCount();
+
+        if (isLooping && (block == headBlock) && (cpsr == headCPSR) &&
+                (timerReadCount == headTimerReadCount) && isSameRegisters(registers)) {
+            // At least one iteration must run after the skip before the
+            // loop can be found idle again, as what it reads may have changed
+            headBlock = null;
+            if (TraceIdleLoops) report(block);
+            return true;
+        }
+
+        headBlock = block;
+        System.arraycopy(registers, 0, headRegisters, 0, headRegisters.length);
+        headCPSR = cpsr;
+        headTimerReadCount = timerReadCount;
+        return false;
+    }
+
+    private boolean isSameRegisters(int[] registers) {
+        for (int i = 0; i < headRegisters.length; i++) {
+            if (registers[i] != headRegisters[i]) return false;
+        }
+        return true;
+    }
+
+    private void report(BlockCache.Block block) {
+        if (!reportedLoops.add(block.address)) return;
+        System.out.printf("[IDLE] busy-wait loop at %08X (%s, %d instructions)%n",
+                block.address, block.thumb ? "THUMB" : "ARM", block.opcodes.length);
+    }
+
+}
@@ -0,0 +1,11 @@
+package ygba.cpu;
+
+import ygba.memory.MemoryInterface;
+
+// Public for the classes generated by BlockCompiler, which are defined by
+// their own class loader and so are not in the package at run time
+public interface InstructionHandler {
+
+    void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode);
+
+}
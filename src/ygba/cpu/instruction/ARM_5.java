@@ -257,8 +257,7 @@ public final class ARM_5 {
         }
         
         if (sBit) {
-            cpu.setNFlag(rdValue < 0);
-            cpu.setZFlag(rdValue == 0);
+            cpu.setNZFlags(rdValue);
         }
         
         if (rdIndex == cpu.PC) {
@@ -14,8 +14,8 @@ public final class ARM_6 {
             psrIndex = cpu.CPSR;
             psrValue = cpu.getCPSR();
         } else {
-            if (cpu.SPSR == cpu.SPSR_null) return;
-            psrIndex = cpu.SPSR;
+            if (!cpu.hasSPSR()) return;
+            psrIndex = cpu.getSPSRIndex();
             psrValue = cpu.getSPSR();
         }
         
@@ -26,8 +26,7 @@ public final class ARM_7 {
         cpu.setRegister(rdIndex, rdValue);
         
         if ((opcode & 0x00100000) != 0) {
-            cpu.setZFlag(rdValue == 0);
-            cpu.setNFlag(rdValue < 0);
+            cpu.setNZFlags(rdValue);
         }
     }
     
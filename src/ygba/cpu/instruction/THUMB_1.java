@@ -6,46 +6,63 @@ import ygba.memory.MemoryInterface;
 public final class THUMB_1 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = opcode & 0x0007;
-        int rsIndex = (opcode >>> 3) & 0x0007;
-        int rsValue = cpu.getRegister(rsIndex);
+        switch (opcode & 0x1800) {
+            case 0x0000: executeLSL(cpu, memory, opcode); break;
+            case 0x0800: executeLSR(cpu, memory, opcode); break;
+            case 0x1000: executeASR(cpu, memory, opcode); break;
+            default: // Unknown
+        }
+    }
+    
+    // LSL Rd, Rs, #Offset
+    public static void executeLSL(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
         int rdValue = rsValue;
         int shiftAmount = (opcode >>> 6) & 0x001F;
         
-        switch (opcode & 0x1800) {
-            case 0x0000: // LSL Rd, Rs, #Offset
-                if (shiftAmount != 0) {
-                    cpu.setCFlag((rsValue & (1 << (32 - shiftAmount))) != 0);
-                    rdValue = rsValue << shiftAmount;
-                }
-                break;
-                
-            case 0x0800: // LSR Rd, Rs, #Offset
-                if (shiftAmount == 0) {
-                    cpu.setCFlag(rsValue < 0);
-                    rdValue = 0;
-                } else {
-                    cpu.setCFlag((rsValue & (1 << (shiftAmount - 1))) != 0);
-                    rdValue = rsValue >>> shiftAmount;
-                }
-                break;
-                
-            case 0x1000: // ASR Rd, Rs, #Offset
-                if (shiftAmount == 0) {
-                    cpu.setCFlag(rsValue < 0);
-                    rdValue = rsValue >> 31;
-                } else {
-                    cpu.setCFlag((rsValue & (1 << (shiftAmount - 1))) != 0);
-                    rdValue = rsValue >> shiftAmount;
-                }
-                break;
-                
-            default: // Unknown
+        if (shiftAmount != 0) {
+            cpu.setCFlag((rsValue & (1 << (32 - shiftAmount))) != 0);
+            rdValue = rsValue << shiftAmount;
+        }
+        
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
+    }
+    
+    // LSR Rd, Rs, #Offset
+    public static void executeLSR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdValue;
+        int shiftAmount = (opcode >>> 6) & 0x001F;
+        
+        if (shiftAmount == 0) {
+            cpu.setCFlag(rsValue < 0);
+            rdValue = 0;
+        } else {
+            cpu.setCFlag((rsValue & (1 << (shiftAmount - 1))) != 0);
+            rdValue = rsValue >>> shiftAmount;
+        }
+        
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
+    }
+    
+    // ASR Rd, Rs, #Offset
+    public static void executeASR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdValue;
+        int shiftAmount = (opcode >>> 6) & 0x001F;
+        
+        if (shiftAmount == 0) {
+            cpu.setCFlag(rsValue < 0);
+            rdValue = rsValue >> 31;
+        } else {
+            cpu.setCFlag((rsValue & (1 << (shiftAmount - 1))) != 0);
+            rdValue = rsValue >> shiftAmount;
         }
         
-        cpu.setRegister(rdIndex, rdValue);
-        cpu.setZFlag(rdValue == 0);
-        cpu.setNFlag(rdValue < 0);
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
     }
     
     
@@ -7,18 +7,26 @@ import ygba.util.Hex;
 public final class THUMB_10 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = opcode & 0x0007;
-        int rbIndex = (opcode >>> 3) & 0x0007;
-        int rbValue = cpu.getRegister(rbIndex);
-        int offset = (opcode >>> 5) & 0x003E;
-        
-        if ((opcode & 0x0800) == 0) { // STRH Rd, [Rb, #nn]
-            memory.storeHalfWord(rbValue + offset, (short) cpu.getRegister(rdIndex));
-        } else { // LDRH Rd, [Rb, #nn]
-            cpu.setRegister(rdIndex, cpu.loadHalfWordUnsigned(rbValue + offset));
+        switch (opcode & 0x0800) {
+            case 0x0000: executeSTRH(cpu, memory, opcode); break;
+            case 0x0800: executeLDRH(cpu, memory, opcode); break;
         }
     }
     
+    // STRH Rd, [Rb, #nn]
+    public static void executeSTRH(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + ((opcode >>> 5) & 0x003E);
+        memory.storeHalfWord(offset, (short) cpu.getRegister(rdIndex));
+    }
+    
+    // LDRH Rd, [Rb, #nn]
+    public static void executeLDRH(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + ((opcode >>> 5) & 0x003E);
+        cpu.setRegister(rdIndex, cpu.loadHalfWordUnsigned(offset));
+    }
+    
     
     final static String[] InstructionName = {
         "strh",
@@ -7,17 +7,26 @@ import ygba.util.Hex;
 public final class THUMB_11 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = (opcode >>> 8) & 0x0007;
-        int spValue = cpu.getSP();
-        int offset = (opcode & 0x00FF) << 2;
-        
-        if ((opcode & 0x0800) == 0) { // STR Rd, [SP, #nn]
-            memory.storeWord(spValue + offset, cpu.getRegister(rdIndex));
-        } else { // LDR Rd, [SP, #nn]
-            cpu.setRegister(rdIndex, cpu.loadWordRotate(spValue + offset));
+        switch (opcode & 0x0800) {
+            case 0x0000: executeSTR(cpu, memory, opcode); break;
+            case 0x0800: executeLDR(cpu, memory, opcode); break;
         }
     }
     
+    // STR Rd, [SP, #nn]
+    public static void executeSTR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = (opcode >>> 8) & 0x0007;
+        int offset = cpu.getSP() + ((opcode & 0x00FF) << 2);
+        memory.storeWord(offset, cpu.getRegister(rdIndex));
+    }
+    
+    // LDR Rd, [SP, #nn]
+    public static void executeLDR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = (opcode >>> 8) & 0x0007;
+        int offset = cpu.getSP() + ((opcode & 0x00FF) << 2);
+        cpu.setRegister(rdIndex, cpu.loadWordRotate(offset));
+    }
+    
     
     final static String[] InstructionName = {
         "str",
@@ -7,76 +7,101 @@ import ygba.util.Hex;
 public final class THUMB_16 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        boolean condition;
-        
         switch (opcode & 0x0F00) {
-            case 0x0000: // BEQ label
-                condition = cpu.getZFlag();
-                break;
-                
-            case 0x0100: // BNE label
-                condition = !cpu.getZFlag();
-                break;
-                
-            case 0x0200: // BCS label
-                condition = cpu.getCFlag();
-                break;
-                
-            case 0x0300: // BCC label
-                condition = !cpu.getCFlag();
-                break;
-                
-            case 0x0400: // BMI label
-                condition = cpu.getNFlag();
-                break;
-                
-            case 0x0500: // BPL label
-                condition = !cpu.getNFlag();
-                break;
-                
-            case 0x0600: // BVS label
-                condition = cpu.getVFlag();
-                break;
-                
-            case 0x0700: // BVC label
-                condition = !cpu.getVFlag();
-                break;
-                
-            case 0x0800: // BHI label
-                condition = (cpu.getCFlag() && !cpu.getZFlag());
-                break;
-                
-            case 0x0900: // BLS label
-                condition = (!cpu.getCFlag() || cpu.getZFlag());
-                break;
-                
-            case 0x0A00: // BGE label
-                condition = (cpu.getNFlag() == cpu.getVFlag());
-                break;
-                
-            case 0x0B00: // BLT label
-                condition = (cpu.getNFlag() != cpu.getVFlag());
-                break;
-                
-            case 0x0C00: // BGT label
-                condition = (!cpu.getZFlag() && (cpu.getNFlag() == cpu.getVFlag()));
-                break;
-                
-            case 0x0D00: // BLE label
-                condition = (cpu.getZFlag() || (cpu.getNFlag() != cpu.getVFlag()));
-                break;
-                
+            case 0x0000: executeBEQ(cpu, memory, opcode); break;
+            case 0x0100: executeBNE(cpu, memory, opcode); break;
+            case 0x0200: executeBCS(cpu, memory, opcode); break;
+            case 0x0300: executeBCC(cpu, memory, opcode); break;
+            case 0x0400: executeBMI(cpu, memory, opcode); break;
+            case 0x0500: executeBPL(cpu, memory, opcode); break;
+            case 0x0600: executeBVS(cpu, memory, opcode); break;
+            case 0x0700: executeBVC(cpu, memory, opcode); break;
+            case 0x0800: executeBHI(cpu, memory, opcode); break;
+            case 0x0900: executeBLS(cpu, memory, opcode); break;
+            case 0x0A00: executeBGE(cpu, memory, opcode); break;
+            case 0x0B00: executeBLT(cpu, memory, opcode); break;
+            case 0x0C00: executeBGT(cpu, memory, opcode); break;
+            case 0x0D00: executeBLE(cpu, memory, opcode); break;
             default: // Unknown
-                condition = false;
-        }
-        
-        if (condition) {
-            int offset = ((byte) (opcode & 0x00FF)) << 1;
-            cpu.setPC(cpu.getPC() + offset);
-            cpu.flushTHUMBPipeline();
         }
     }
     
+    // BEQ label
+    public static void executeBEQ(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getZFlag()) branch(cpu, opcode);
+    }
+    
+    // BNE label
+    public static void executeBNE(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (!cpu.getZFlag()) branch(cpu, opcode);
+    }
+    
+    // BCS label
+    public static void executeBCS(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getCFlag()) branch(cpu, opcode);
+    }
+    
+    // BCC label
+    public static void executeBCC(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (!cpu.getCFlag()) branch(cpu, opcode);
+    }
+    
+    // BMI label
+    public static void executeBMI(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getNFlag()) branch(cpu, opcode);
+    }
+    
+    // BPL label
+    public static void executeBPL(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (!cpu.getNFlag()) branch(cpu, opcode);
+    }
+    
+    // BVS label
+    public static void executeBVS(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getVFlag()) branch(cpu, opcode);
+    }
+    
+    // BVC label
+    public static void executeBVC(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (!cpu.getVFlag()) branch(cpu, opcode);
+    }
+    
+    // BHI label
+    public static void executeBHI(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getCFlag() && !cpu.getZFlag()) branch(cpu, opcode);
+    }
+    
+    // BLS label
+    public static void executeBLS(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (!cpu.getCFlag() || cpu.getZFlag()) branch(cpu, opcode);
+    }
+    
+    // BGE label
+    public static void executeBGE(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getNFlag() == cpu.getVFlag()) branch(cpu, opcode);
+    }
+    
+    // BLT label
+    public static void executeBLT(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getNFlag() != cpu.getVFlag()) branch(cpu, opcode);
+    }
+    
+    // BGT label
+    public static void executeBGT(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (!cpu.getZFlag() && (cpu.getNFlag() == cpu.getVFlag())) branch(cpu, opcode);
+    }
+    
+    // BLE label
+    public static void executeBLE(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        if (cpu.getZFlag() || (cpu.getNFlag() != cpu.getVFlag())) branch(cpu, opcode);
+    }
+    
+    private static void branch(ARM7TDMI cpu, int opcode) {
+        int offset = ((byte) (opcode & 0x00FF)) << 1;
+        cpu.setPC(cpu.getPC() + offset);
+        cpu.flushTHUMBPipeline();
+    }
+    
     
     final static String[] InstructionName = {
         "beq",
@@ -7,27 +7,52 @@ import ygba.util.Hex;
 public final class THUMB_2 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = opcode & 0x0007;
-        int rsIndex = (opcode >>> 3) & 0x0007;
-        int rsValue = cpu.getRegister(rsIndex);
-        int rdValue;
-        int operand3 = (opcode >>> 6) & 0x0007;
-        
-        if ((opcode & 0x0400) == 0) { // operand3 is a register
-            operand3 = cpu.getRegister(operand3);
-        }
-        
-        if ((opcode & 0x0200) == 0) { // ADD Rd, Rs, (Rn / #nn)
-            rdValue = rsValue + operand3;
-            cpu.setVCFlagsForADD(rsValue, operand3, rdValue);
-        } else { // SUB Rd, Rs, (Rn / #nn)
-            rdValue = rsValue - operand3;
-            cpu.setVCFlagsForSUB(rsValue, operand3, rdValue);
+        switch (opcode & 0x0600) {
+            case 0x0000: executeADDRegister(cpu, memory, opcode); break;
+            case 0x0200: executeSUBRegister(cpu, memory, opcode); break;
+            case 0x0400: executeADDImmediate(cpu, memory, opcode); break;
+            case 0x0600: executeSUBImmediate(cpu, memory, opcode); break;
         }
-        
-        cpu.setRegister(rdIndex, rdValue);
-        cpu.setZFlag(rdValue == 0);
-        cpu.setNFlag(rdValue < 0);
+    }
+    
+    // ADD Rd, Rs, Rn
+    public static void executeADDRegister(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int operand3 = cpu.getRegister((opcode >>> 6) & 0x0007);
+        int rdValue = rsValue + operand3;
+        cpu.setVCFlagsForADD(rsValue, operand3, rdValue);
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
+    }
+    
+    // SUB Rd, Rs, Rn
+    public static void executeSUBRegister(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int operand3 = cpu.getRegister((opcode >>> 6) & 0x0007);
+        int rdValue = rsValue - operand3;
+        cpu.setVCFlagsForSUB(rsValue, operand3, rdValue);
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
+    }
+    
+    // ADD Rd, Rs, #nn
+    public static void executeADDImmediate(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int operand3 = (opcode >>> 6) & 0x0007;
+        int rdValue = rsValue + operand3;
+        cpu.setVCFlagsForADD(rsValue, operand3, rdValue);
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
+    }
+    
+    // SUB Rd, Rs, #nn
+    public static void executeSUBImmediate(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int operand3 = (opcode >>> 6) & 0x0007;
+        int rdValue = rsValue - operand3;
+        cpu.setVCFlagsForSUB(rsValue, operand3, rdValue);
+        cpu.setRegister(opcode & 0x0007, rdValue);
+        cpu.setNZFlags(rdValue);
     }
     
     
@@ -7,39 +7,50 @@ import ygba.util.Hex;
 public final class THUMB_3 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        switch (opcode & 0x1800) {
+            case 0x0000: executeMOV(cpu, memory, opcode); break;
+            case 0x0800: executeCMP(cpu, memory, opcode); break;
+            case 0x1000: executeADD(cpu, memory, opcode); break;
+            case 0x1800: executeSUB(cpu, memory, opcode); break;
+        }
+    }
+    
+    // MOV Rd, #nn
+    public static void executeMOV(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdNewValue = opcode & 0x00FF;
+        cpu.setRegister((opcode >>> 8) & 0x0007, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // CMP Rd, #nn
+    public static void executeCMP(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdOldValue = cpu.getRegister((opcode >>> 8) & 0x0007);
+        int immediate = opcode & 0x00FF;
+        int rdNewValue = rdOldValue - immediate;
+        cpu.setVCFlagsForSUB(rdOldValue, immediate, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // ADD Rd, #nn
+    public static void executeADD(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
         int rdIndex = (opcode >>> 8) & 0x0007;
         int rdOldValue = cpu.getRegister(rdIndex);
-        int rdNewValue = 0;
         int immediate = opcode & 0x00FF;
-        
-        switch (opcode & 0x1800) {
-            case 0x0000: // MOV Rd, #nn
-                rdNewValue = immediate;
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x0800: // CMP Rd, #nn
-                rdNewValue = rdOldValue - immediate;
-                cpu.setVCFlagsForSUB(rdOldValue, immediate, rdNewValue);
-                break;
-                
-            case 0x1000: // ADD Rd, #nn
-                rdNewValue = rdOldValue + immediate;
-                cpu.setVCFlagsForADD(rdOldValue, immediate, rdNewValue);
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x1800: // SUB Rd, #nn
-                rdNewValue = rdOldValue - immediate;
-                cpu.setVCFlagsForSUB(rdOldValue, immediate, rdNewValue);
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            default: // Unknown
-        }
-        
-        cpu.setZFlag(rdNewValue == 0);
-        cpu.setNFlag(rdNewValue < 0);
+        int rdNewValue = rdOldValue + immediate;
+        cpu.setVCFlagsForADD(rdOldValue, immediate, rdNewValue);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // SUB Rd, #nn
+    public static void executeSUB(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = (opcode >>> 8) & 0x0007;
+        int rdOldValue = cpu.getRegister(rdIndex);
+        int immediate = opcode & 0x00FF;
+        int rdNewValue = rdOldValue - immediate;
+        cpu.setVCFlagsForSUB(rdOldValue, immediate, rdNewValue);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
     }
     
     
@@ -6,147 +6,221 @@ import ygba.memory.MemoryInterface;
 public final class THUMB_4 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        switch (opcode & 0x03C0) {
+            case 0x0000: executeAND(cpu, memory, opcode); break;
+            case 0x0040: executeEOR(cpu, memory, opcode); break;
+            case 0x0080: executeLSL(cpu, memory, opcode); break;
+            case 0x00C0: executeLSR(cpu, memory, opcode); break;
+            case 0x0100: executeASR(cpu, memory, opcode); break;
+            case 0x0140: executeADC(cpu, memory, opcode); break;
+            case 0x0180: executeSBC(cpu, memory, opcode); break;
+            case 0x01C0: executeROR(cpu, memory, opcode); break;
+            case 0x0200: executeTST(cpu, memory, opcode); break;
+            case 0x0240: executeNEG(cpu, memory, opcode); break;
+            case 0x0280: executeCMP(cpu, memory, opcode); break;
+            case 0x02C0: executeCMN(cpu, memory, opcode); break;
+            case 0x0300: executeORR(cpu, memory, opcode); break;
+            case 0x0340: executeMUL(cpu, memory, opcode); break;
+            case 0x0380: executeBIC(cpu, memory, opcode); break;
+            case 0x03C0: executeMVN(cpu, memory, opcode); break;
+        }
+    }
+    
+    // AND Rd, Rs
+    public static void executeAND(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rdNewValue = cpu.getRegister(rdIndex) & cpu.getRegister((opcode >>> 3) & 0x0007);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // EOR Rd, Rs
+    public static void executeEOR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rdNewValue = cpu.getRegister(rdIndex) ^ cpu.getRegister((opcode >>> 3) & 0x0007);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // LSL Rd, Rs
+    public static void executeLSL(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
         int rdIndex = opcode & 0x0007;
-        int rsIndex = (opcode >>> 3) & 0x0007;
-        int rsValue = cpu.getRegister(rsIndex);
-        int shiftAmountByte = rsValue & 0x000000FF;
+        int shiftAmountByte = cpu.getRegister((opcode >>> 3) & 0x0007) & 0x000000FF;
         int rdOldValue = cpu.getRegister(rdIndex);
         int rdNewValue = rdOldValue;
         
-        switch (opcode & 0x03C0) {
-            case 0x0000: // AND Rd, Rs
-                rdNewValue &= rsValue;
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x0040: // EOR Rd, Rs
-                rdNewValue ^= rsValue;
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x0080: // LSL Rd, Rs
-                if (shiftAmountByte != 0) {
-                    if (shiftAmountByte < 32) {
-                        cpu.setCFlag((rdOldValue & (1 << (32 - shiftAmountByte))) != 0);
-                        rdNewValue <<= shiftAmountByte;
-                    } else if (shiftAmountByte == 32) {
-                        cpu.setCFlag((rdOldValue & 0x00000001) != 0);
-                        rdNewValue = 0;
-                    } else {
-                        cpu.setCFlag(false);
-                        rdNewValue = 0;
-                    }
-                    cpu.setRegister(rdIndex, rdNewValue);
-                }
-                break;
-                
-            case 0x00C0: // LSR Rd, Rs
-                if (shiftAmountByte != 0) {
-                    if (shiftAmountByte < 32) {
-                        cpu.setCFlag((rdOldValue & (1 << (shiftAmountByte - 1))) != 0);
-                        rdNewValue >>>= shiftAmountByte;
-                    } else if (shiftAmountByte == 32) {
-                        cpu.setCFlag((rdOldValue & 0x80000000) != 0);
-                        rdNewValue = 0;
-                    } else {
-                        cpu.setCFlag(false);
-                        rdNewValue = 0;
-                    }
-                    cpu.setRegister(rdIndex, rdNewValue);
-                }
-                break;
-                
-            case 0x0100: // ASR Rd, Rs
-                if (shiftAmountByte != 0) {
-                    if (shiftAmountByte < 32) {
-                        cpu.setCFlag((rdOldValue & (1 << (shiftAmountByte - 1))) != 0);
-                        rdNewValue >>= shiftAmountByte;
-                    } else {
-                        cpu.setCFlag((rdOldValue & 0x80000000) != 0);
-                        rdNewValue >>= 31;
-                    }
-                    cpu.setRegister(rdIndex, rdNewValue);
-                }
-                break;
-                
-            case 0x0140: { // ADC Rd, Rs
-                int carry = cpu.getCFlag() ? 1 : 0;
-                long longResult = (rdOldValue & 0xFFFFFFFFL) + (rsValue & 0xFFFFFFFFL) + carry;
-                rdNewValue = (int) longResult;
-                cpu.setCFlag(longResult > 0xFFFFFFFFL);
-                cpu.setVFlag(((rdOldValue ^ rdNewValue) & (rsValue ^ rdNewValue)) < 0);
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
+        if (shiftAmountByte != 0) {
+            if (shiftAmountByte < 32) {
+                cpu.setCFlag((rdOldValue & (1 << (32 - shiftAmountByte))) != 0);
+                rdNewValue <<= shiftAmountByte;
+            } else if (shiftAmountByte == 32) {
+                cpu.setCFlag((rdOldValue & 0x00000001) != 0);
+                rdNewValue = 0;
+            } else {
+                cpu.setCFlag(false);
+                rdNewValue = 0;
             }
-
-            case 0x0180: { // SBC Rd, Rs
-                int borrow = cpu.getCFlag() ? 0 : 1;
-                long longResult = (rdOldValue & 0xFFFFFFFFL) - (rsValue & 0xFFFFFFFFL) - borrow;
-                rdNewValue = (int) longResult;
-                cpu.setCFlag(longResult >= 0);
-                cpu.setVFlag(((rdOldValue ^ rsValue) & (rdOldValue ^ rdNewValue)) < 0);
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
+            cpu.setRegister(rdIndex, rdNewValue);
+        }
+        
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // LSR Rd, Rs
+    public static void executeLSR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int shiftAmountByte = cpu.getRegister((opcode >>> 3) & 0x0007) & 0x000000FF;
+        int rdOldValue = cpu.getRegister(rdIndex);
+        int rdNewValue = rdOldValue;
+        
+        if (shiftAmountByte != 0) {
+            if (shiftAmountByte < 32) {
+                cpu.setCFlag((rdOldValue & (1 << (shiftAmountByte - 1))) != 0);
+                rdNewValue >>>= shiftAmountByte;
+            } else if (shiftAmountByte == 32) {
+                cpu.setCFlag((rdOldValue & 0x80000000) != 0);
+                rdNewValue = 0;
+            } else {
+                cpu.setCFlag(false);
+                rdNewValue = 0;
             }
-                
-            case 0x01C0: // ROR Rd, Rs
-                if (shiftAmountByte != 0) {
-                    int shiftAmount = shiftAmountByte & 0x0000001F;
-                    if (shiftAmount == 0) {
-                        cpu.setCFlag((rdOldValue & 0x80000000) != 0);
-                    } else {
-                        cpu.setCFlag((rdOldValue & (1 << (shiftAmount - 1))) != 0);
-                        rdNewValue = (rdOldValue << (32 - shiftAmount)) | (rdOldValue >>> shiftAmount);
-                        cpu.setRegister(rdIndex, rdNewValue);
-                    }
-                }
-                break;
-                
-            case 0x0200: // TST Rd, Rs
-                rdNewValue &= rsValue;
-                break;
-                
-            case 0x0240: // NEG Rd, Rs
-                rdNewValue = -rsValue;
-                cpu.setVCFlagsForSUB(0, rsValue, rdNewValue);
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x0280: // CMP Rd, Rs
-                rdNewValue -= rsValue;
-                cpu.setVCFlagsForSUB(rdOldValue, rsValue, rdNewValue);
-                break;
-                
-            case 0x02C0: // CMN Rd, Rs
-                rdNewValue += rsValue;
-                cpu.setVCFlagsForADD(rdOldValue, rsValue, rdNewValue);
-                break;
-                
-            case 0x0300: // ORR Rd, Rs
-                rdNewValue |= rsValue;
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x0340: // MUL Rd, Rs
-                rdNewValue *= rsValue;
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x0380: // BIC Rd, Rs
-                rdNewValue &= ~rsValue;
-                cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            case 0x03C0: // MVN Rd, Rs
-                rdNewValue = ~rsValue;
+            cpu.setRegister(rdIndex, rdNewValue);
+        }
+        
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // ASR Rd, Rs
+    public static void executeASR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int shiftAmountByte = cpu.getRegister((opcode >>> 3) & 0x0007) & 0x000000FF;
+        int rdOldValue = cpu.getRegister(rdIndex);
+        int rdNewValue = rdOldValue;
+        
+        if (shiftAmountByte != 0) {
+            if (shiftAmountByte < 32) {
+                cpu.setCFlag((rdOldValue & (1 << (shiftAmountByte - 1))) != 0);
+                rdNewValue >>= shiftAmountByte;
+            } else {
+                cpu.setCFlag((rdOldValue & 0x80000000) != 0);
+                rdNewValue >>= 31;
+            }
+            cpu.setRegister(rdIndex, rdNewValue);
+        }
+        
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // ADC Rd, Rs
+    public static void executeADC(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdOldValue = cpu.getRegister(rdIndex);
+        int carry = cpu.getCFlag() ? 1 : 0;
+        long longResult = (rdOldValue & 0xFFFFFFFFL) + (rsValue & 0xFFFFFFFFL) + carry;
+        int rdNewValue = (int) longResult;
+        cpu.setCFlag(longResult > 0xFFFFFFFFL);
+        cpu.setVFlag(((rdOldValue ^ rdNewValue) & (rsValue ^ rdNewValue)) < 0);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // SBC Rd, Rs
+    public static void executeSBC(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdOldValue = cpu.getRegister(rdIndex);
+        int borrow = cpu.getCFlag() ? 0 : 1;
+        long longResult = (rdOldValue & 0xFFFFFFFFL) - (rsValue & 0xFFFFFFFFL) - borrow;
+        int rdNewValue = (int) longResult;
+        cpu.setCFlag(longResult >= 0);
+        cpu.setVFlag(((rdOldValue ^ rsValue) & (rdOldValue ^ rdNewValue)) < 0);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // ROR Rd, Rs
+    public static void executeROR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int shiftAmountByte = cpu.getRegister((opcode >>> 3) & 0x0007) & 0x000000FF;
+        int rdOldValue = cpu.getRegister(rdIndex);
+        int rdNewValue = rdOldValue;
+        
+        if (shiftAmountByte != 0) {
+            int shiftAmount = shiftAmountByte & 0x0000001F;
+            if (shiftAmount == 0) {
+                cpu.setCFlag((rdOldValue & 0x80000000) != 0);
+            } else {
+                cpu.setCFlag((rdOldValue & (1 << (shiftAmount - 1))) != 0);
+                rdNewValue = (rdOldValue << (32 - shiftAmount)) | (rdOldValue >>> shiftAmount);
                 cpu.setRegister(rdIndex, rdNewValue);
-                break;
-                
-            default: // Unknown
+            }
         }
         
-        cpu.setZFlag(rdNewValue == 0);
-        cpu.setNFlag(rdNewValue < 0);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // TST Rd, Rs
+    public static void executeTST(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        cpu.setNZFlags(cpu.getRegister(opcode & 0x0007) & cpu.getRegister((opcode >>> 3) & 0x0007));
+    }
+    
+    // NEG Rd, Rs
+    public static void executeNEG(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdNewValue = -rsValue;
+        cpu.setVCFlagsForSUB(0, rsValue, rdNewValue);
+        cpu.setRegister(opcode & 0x0007, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // CMP Rd, Rs
+    public static void executeCMP(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdOldValue = cpu.getRegister(opcode & 0x0007);
+        int rdNewValue = rdOldValue - rsValue;
+        cpu.setVCFlagsForSUB(rdOldValue, rsValue, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // CMN Rd, Rs
+    public static void executeCMN(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x0007);
+        int rdOldValue = cpu.getRegister(opcode & 0x0007);
+        int rdNewValue = rdOldValue + rsValue;
+        cpu.setVCFlagsForADD(rdOldValue, rsValue, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // ORR Rd, Rs
+    public static void executeORR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rdNewValue = cpu.getRegister(rdIndex) | cpu.getRegister((opcode >>> 3) & 0x0007);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // MUL Rd, Rs
+    public static void executeMUL(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rdNewValue = cpu.getRegister(rdIndex) * cpu.getRegister((opcode >>> 3) & 0x0007);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // BIC Rd, Rs
+    public static void executeBIC(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int rdNewValue = cpu.getRegister(rdIndex) & ~cpu.getRegister((opcode >>> 3) & 0x0007);
+        cpu.setRegister(rdIndex, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
+    }
+    
+    // MVN Rd, Rs
+    public static void executeMVN(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdNewValue = ~cpu.getRegister((opcode >>> 3) & 0x0007);
+        cpu.setRegister(opcode & 0x0007, rdNewValue);
+        cpu.setNZFlags(rdNewValue);
     }
     
     
@@ -6,43 +6,47 @@ import ygba.memory.MemoryInterface;
 public final class THUMB_5 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rsIndex = (opcode >>> 3) & 0x000F;
-        int rsValue = cpu.getRegister(rsIndex);
-        int rdIndex, rdValue;
-        
         switch (opcode & 0x0300) {
-            case 0x0000: // ADD Rd, Rs
-                rdIndex = (opcode & 0x0007) | ((opcode & 0x0080) >>> 4);
-                rdValue = cpu.getRegister(rdIndex);
-                cpu.setRegister(rdIndex, rdValue + rsValue);
-                if (rdIndex == cpu.PC) cpu.flushTHUMBPipeline();
-                break;
-                
-            case 0x0100: // CMP Rd, Rs
-                rdIndex = (opcode & 0x0007) | ((opcode & 0x0080) >>> 4);
-                rdValue = cpu.getRegister(rdIndex);
-                int result = rdValue - rsValue;
-                cpu.setVCFlagsForSUB(rdValue, rsValue, result);
-                cpu.setZFlag(result == 0);
-                cpu.setNFlag(result < 0);
-                break;
-                
-            case 0x0200: // MOV Rd, Rs
-                rdIndex = (opcode & 0x0007) | ((opcode & 0x0080) >>> 4);
-                cpu.setRegister(rdIndex, rsValue);
-                if (rdIndex == cpu.PC) cpu.flushTHUMBPipeline();
-                break;
-                
-            case 0x0300: // BX Rs
-                cpu.setTFlag((rsValue & 0x00000001) != 0);
-                cpu.setPC(rsValue);
-                cpu.flushPipeline();
-                break;
-                
-            default: // Unknown
+            case 0x0000: executeADD(cpu, memory, opcode); break;
+            case 0x0100: executeCMP(cpu, memory, opcode); break;
+            case 0x0200: executeMOV(cpu, memory, opcode); break;
+            case 0x0300: executeBX(cpu, memory, opcode); break;
         }
     }
     
+    // ADD Rd, Rs
+    public static void executeADD(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x000F);
+        int rdIndex = (opcode & 0x0007) | ((opcode & 0x0080) >>> 4);
+        cpu.setRegister(rdIndex, cpu.getRegister(rdIndex) + rsValue);
+        if (rdIndex == cpu.PC) cpu.flushTHUMBPipeline();
+    }
+    
+    // CMP Rd, Rs
+    public static void executeCMP(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x000F);
+        int rdValue = cpu.getRegister((opcode & 0x0007) | ((opcode & 0x0080) >>> 4));
+        int result = rdValue - rsValue;
+        cpu.setVCFlagsForSUB(rdValue, rsValue, result);
+        cpu.setNZFlags(result);
+    }
+    
+    // MOV Rd, Rs
+    public static void executeMOV(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x000F);
+        int rdIndex = (opcode & 0x0007) | ((opcode & 0x0080) >>> 4);
+        cpu.setRegister(rdIndex, rsValue);
+        if (rdIndex == cpu.PC) cpu.flushTHUMBPipeline();
+    }
+    
+    // BX Rs
+    public static void executeBX(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rsValue = cpu.getRegister((opcode >>> 3) & 0x000F);
+        cpu.setTFlag((rsValue & 0x00000001) != 0);
+        cpu.setPC(rsValue);
+        cpu.flushPipeline();
+    }
+    
     
     final static String[] InstructionName = {
         "add",
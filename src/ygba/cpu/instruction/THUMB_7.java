@@ -6,32 +6,42 @@ import ygba.memory.MemoryInterface;
 public final class THUMB_7 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = opcode & 0x0007;
-        int rbIndex = (opcode >>> 3) & 0x0007;
-        int roIndex = (opcode >>> 6) & 0x0007;
-        int offset = cpu.getRegister(rbIndex) + cpu.getRegister(roIndex);
-        
         switch (opcode & 0x0C00) {
-            case 0x0000: // STR Rd, [Rb, Ro]
-                memory.storeWord(offset, cpu.getRegister(rdIndex));
-                break;
-                
-            case 0x0400: // STRB Rd, [Rb, Ro]
-                memory.storeByte(offset, (byte) cpu.getRegister(rdIndex));
-                break;
-                
-            case 0x0800: // LDR Rd, [Rb, Ro]
-                cpu.setRegister(rdIndex, cpu.loadWordRotate(offset));
-                break;
-                
-            case 0x0C00: // LDRB Rd, [Rb, Ro]
-                cpu.setRegister(rdIndex, memory.loadByte(offset) & 0x000000FF);
-                break;
-                
-            default: // Unknown
+            case 0x0000: executeSTR(cpu, memory, opcode); break;
+            case 0x0400: executeSTRB(cpu, memory, opcode); break;
+            case 0x0800: executeLDR(cpu, memory, opcode); break;
+            case 0x0C00: executeLDRB(cpu, memory, opcode); break;
         }
     }
     
+    // STR Rd, [Rb, Ro]
+    public static void executeSTR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        memory.storeWord(offset, cpu.getRegister(rdIndex));
+    }
+    
+    // STRB Rd, [Rb, Ro]
+    public static void executeSTRB(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        memory.storeByte(offset, (byte) cpu.getRegister(rdIndex));
+    }
+    
+    // LDR Rd, [Rb, Ro]
+    public static void executeLDR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        cpu.setRegister(rdIndex, cpu.loadWordRotate(offset));
+    }
+    
+    // LDRB Rd, [Rb, Ro]
+    public static void executeLDRB(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        cpu.setRegister(rdIndex, memory.loadByte(offset) & 0x000000FF);
+    }
+    
     
     final static String[] InstructionName = {
         "str",
@@ -6,32 +6,42 @@ import ygba.memory.MemoryInterface;
 public final class THUMB_8 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = opcode & 0x0007;
-        int rbIndex = (opcode >>> 3) & 0x0007;
-        int roIndex = (opcode >>> 6) & 0x0007;
-        int offset = cpu.getRegister(rbIndex) + cpu.getRegister(roIndex);
-        
         switch (opcode & 0x0C00) {
-            case 0x0000: // STRH Rd, [Rb, Ro]
-                memory.storeHalfWord(offset, (short) cpu.getRegister(rdIndex));
-                break;
-                
-            case 0x0400: // LDSB Rd, [Rb, Ro]
-                cpu.setRegister(rdIndex, memory.loadByte(offset));
-                break;
-                
-            case 0x0800: // LDRH Rd, [Rb, Ro]
-                cpu.setRegister(rdIndex, cpu.loadHalfWordUnsigned(offset));
-                break;
-                
-            case 0x0C00: // LDSH Rd, [Rb, Ro]
-                cpu.setRegister(rdIndex, cpu.loadHalfWordSigned(offset));
-                break;
-                
-            default: // Unknown
+            case 0x0000: executeSTRH(cpu, memory, opcode); break;
+            case 0x0400: executeLDSB(cpu, memory, opcode); break;
+            case 0x0800: executeLDRH(cpu, memory, opcode); break;
+            case 0x0C00: executeLDSH(cpu, memory, opcode); break;
         }
     }
     
+    // STRH Rd, [Rb, Ro]
+    public static void executeSTRH(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        memory.storeHalfWord(offset, (short) cpu.getRegister(rdIndex));
+    }
+    
+    // LDSB Rd, [Rb, Ro]
+    public static void executeLDSB(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        cpu.setRegister(rdIndex, memory.loadByte(offset));
+    }
+    
+    // LDRH Rd, [Rb, Ro]
+    public static void executeLDRH(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        cpu.setRegister(rdIndex, cpu.loadHalfWordUnsigned(offset));
+    }
+    
+    // LDSH Rd, [Rb, Ro]
+    public static void executeLDSH(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + cpu.getRegister((opcode >>> 6) & 0x0007);
+        cpu.setRegister(rdIndex, cpu.loadHalfWordSigned(offset));
+    }
+    
     
     final static String[] InstructionName = {
         "strh",
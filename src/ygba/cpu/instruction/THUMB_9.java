@@ -7,32 +7,42 @@ import ygba.util.Hex;
 public final class THUMB_9 {
     
     public static void execute(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
-        int rdIndex = opcode & 0x0007;
-        int rbIndex = (opcode >>> 3) & 0x0007;
-        int rbValue = cpu.getRegister(rbIndex);
-        int offset = (opcode >>> 6) & 0x001F;
-        
         switch (opcode & 0x1800) {
-            case 0x0000: // STR Rd, [Rb, #nn]
-                memory.storeWord(rbValue + (offset << 2), cpu.getRegister(rdIndex));
-                break;
-                
-            case 0x0800: // LDR Rd, [Rb, #nn]
-                cpu.setRegister(rdIndex, cpu.loadWordRotate(rbValue + (offset << 2)));
-                break;
-                
-            case 0x1000: // STRB Rd, [Rb, #nn]
-                memory.storeByte(rbValue + offset, (byte) cpu.getRegister(rdIndex));
-                break;
-                
-            case 0x1800: // LDRB Rd, [Rb, #nn]
-                cpu.setRegister(rdIndex, memory.loadByte(rbValue + offset) & 0x000000FF);
-                break;
-                
-            default: // Unknown
+            case 0x0000: executeSTR(cpu, memory, opcode); break;
+            case 0x0800: executeLDR(cpu, memory, opcode); break;
+            case 0x1000: executeSTRB(cpu, memory, opcode); break;
+            case 0x1800: executeLDRB(cpu, memory, opcode); break;
         }
     }
     
+    // STR Rd, [Rb, #nn]
+    public static void executeSTR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + (((opcode >>> 6) & 0x001F) << 2);
+        memory.storeWord(offset, cpu.getRegister(rdIndex));
+    }
+    
+    // LDR Rd, [Rb, #nn]
+    public static void executeLDR(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + (((opcode >>> 6) & 0x001F) << 2);
+        cpu.setRegister(rdIndex, cpu.loadWordRotate(offset));
+    }
+    
+    // STRB Rd, [Rb, #nn]
+    public static void executeSTRB(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + ((opcode >>> 6) & 0x001F);
+        memory.storeByte(offset, (byte) cpu.getRegister(rdIndex));
+    }
+    
+    // LDRB Rd, [Rb, #nn]
+    public static void executeLDRB(ARM7TDMI cpu, MemoryInterface memory, int opcode) {
+        int rdIndex = opcode & 0x0007;
+        int offset = cpu.getRegister((opcode >>> 3) & 0x0007) + ((opcode >>> 6) & 0x001F);
+        cpu.setRegister(rdIndex, memory.loadByte(offset) & 0x000000FF);
+    }
+    
     
     final static String[] InstructionName = {
         "str",
@@ -0,0 +1,120 @@
+package ygba.gfx;
+
+import ygba.memory.Memory;
+import ygba.memory.VideoMemory;
+
+/**
+ * Color code copies (see IndexedFrame) of the bitmaps of video modes 3, 4
+ * and 5, converted a whole row at a time from the video memory array: BG
+ * palette entries in mode 4, Direct RGB555 colors in modes 3 and 5. A row
+ * is converted again only after the video memory under it was written, so
+ * a still or partly updated bitmap costs one row copy per line.
+ * update() must be called on the emulation thread before lines are drawn.
+ */
+final class BitmapFrames {
+
+    private final static int
+            XScreenSize = GFX.XScreenSize,
+            YScreenSize = GFX.YScreenSize;
+
+    // Layouts: mode 3, mode 4 frames 0 and 1, mode 5 frames 0 and 1
+    final static int
+            Mode3 = 0,
+            Mode4 = 1,
+            Mode5 = 3,
+            LayoutCount = 5;
+
+    private final static int[] LayoutBase = { 0x0000, 0x0000, 0xA000, 0x0000, 0xA000 };
+    private final static int[] LayoutWidth = { 240, 240, 240, 160, 160 };
+    private final static int[] LayoutHeight = { 160, 160, 160, 128, 128 };
+    private final static int[] LayoutPixelSize = { 2, 1, 1, 2, 2 };
+
+    private final byte[] vram;
+    private final VideoMemory vidMem;
+    private final long[] vramPages;
+
+    // Converted bitmaps (allocated when first used), XScreenSize pixels per row
+    private final int[][] frames = new int[LayoutCount][];
+    private final boolean[][] isRowValid = new boolean[LayoutCount][YScreenSize];
+
+
+    BitmapFrames(Memory memory) {
+        vidMem = (VideoMemory) memory.getBank(0x06);
+        vram = vidMem.getSpace();
+        vramPages = vidMem.createDirtyPageSet();
+    }
+
+    static int getLayout(int videoMode, boolean isFrame1Selected) {
+        switch (videoMode) {
+            case 3: return Mode3;
+            case 4: return Mode4 + (isFrame1Selected ? 1 : 0);
+            default: return Mode5 + (isFrame1Selected ? 1 : 0);
+        }
+    }
+
+    // Drops the rows under the video memory written since the previous call
+    void update() {
+        vidMem.updateDirtyPageSets();
+        for (int i = 0; i < vramPages.length; i++) {
+            long pages = vramPages[i];
+            if (pages == 0) continue;
+            vramPages[i] = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if ((pages & (1L << bit)) == 0) continue;
+                int start = ((i << 6) + bit) << VideoMemory.DirtyPageShift;
+                int end = start + VideoMemory.DirtyPageSize;
+                for (int layout = 0; layout < LayoutCount; layout++) invalidateRows(layout, start, end);
+            }
+        }
+    }
+
+    // Drops the rows of layout over video memory [start, end)
+    private void invalidateRows(int layout, int start, int end) {
+        int base = LayoutBase[layout];
+        int rowSize = LayoutWidth[layout] * LayoutPixelSize[layout];
+        int frameEnd = base + (rowSize * LayoutHeight[layout]);
+        if (end <= base || start >= frameEnd) return;
+
+        int firstRow = (Math.max(start, base) - base) / rowSize;
+        int lastRow = (Math.min(end, frameEnd) - 1 - base) / rowSize;
+        boolean[] isValid = isRowValid[layout];
+        for (int y = firstRow; y <= lastRow; y++) isValid[y] = false;
+    }
+
+    // Converts every row of layout that changed; lets several renderers
+    // read the frame at the same time afterwards
+    void prepare(int layout) {
+        for (int y = 0; y < LayoutHeight[layout]; y++) getFrame(layout, y);
+    }
+
+    // Returns the converted frame of layout, with row y (at y * XScreenSize)
+    // up to date
+    int[] getFrame(int layout, int y) {
+        int[] frame = frames[layout];
+        if (frame == null) {
+            frame = frames[layout] = new int[XScreenSize * YScreenSize];
+        }
+        if (!isRowValid[layout][y]) {
+            convertRow(layout, y, frame);
+            isRowValid[layout][y] = true;
+        }
+        return frame;
+    }
+
+    private void convertRow(int layout, int y, int[] frame) {
+        int width = LayoutWidth[layout];
+        int offset = LayoutBase[layout] + (y * width * LayoutPixelSize[layout]);
+        int pixel = y * XScreenSize;
+
+        if (LayoutPixelSize[layout] == 1) {
+            for (int x = 0; x < width; x++) {
+                frame[pixel + x] = ScanlineRenderer.Opaque | (vram[offset + x] & 0xFF);
+            }
+        } else {
+            for (int x = 0; x < width; x++, offset += 2) {
+                frame[pixel + x] = ScanlineRenderer.Opaque | IndexedFrame.Direct | (((vram[offset + 1] << 8) | (vram[offset] & 0xFF)) & 0x7FFF);
+            }
+        }
+    }
+
+}
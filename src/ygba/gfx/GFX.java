@@ -1,11 +1,14 @@
 package ygba.gfx;
 
 import ygba.memory.Memory;
-import ygba.memory.IORegMemory;
+import ygba.memory.VideoState;
+import ygba.memory.ObjectMemory;
+import ygba.memory.ObjectTable;
 import ygba.memory.PaletteMemory;
 import ygba.memory.VideoMemory;
-import ygba.memory.ObjectMemory;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.CRC32;
 
 public final class GFX {
@@ -18,40 +21,101 @@ public final class GFX {
             XScreenSize = 240,
             YScreenSize = 160;
 
-    private int[] pixels;
-    private int[][] layerFrames = new int[5][XScreenSize * YScreenSize];
-
-    // Per-layer scanline buffers (0 = transparent / not drawn)
-    private int[][] bgPixels = new int[4][XScreenSize];
-    private int[] objPixels = new int[XScreenSize];
-    private int[] objPri = new int[XScreenSize];
-    private boolean[] objSemiTrans = new boolean[XScreenSize];
-    private boolean[] objWindowMask = new boolean[XScreenSize];
+    // One pool for all the instances of the JVM, one thread per core, so
+    // that many emulators do not start more render threads than there are
+    // cores. Its threads are daemons, started when the first strips are
+    // drawn.
+    private final static ForkJoinPool RenderPool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
-    // Pre-computed per-pixel window flags (6 bits: BG0-3, OBJ, SFX)
-    private int[] windowFlags = new int[XScreenSize];
-
-    private static final int LAYER_OBJ = 4;
-    private static final int LAYER_BD = 5;
-    private static final int WIN_SFX_BIT = 0x20;
+    private int[] pixels;
+    // Color codes and effects of the lines drawn; lines [unresolvedFirstLine,
+    // unresolvedLastLine) were drawn but not yet resolved to pixels, which
+    // happens at VBlank or before the palette is written
+    private final IndexedFrame indexedFrame;
+    private int unresolvedFirstLine, unresolvedLastLine;
+    // Full-frame copies of the BG0-BG3 and OBJ layers, only kept while
+    // layer capture is enabled (debug dumps)
+    private int[][] layerFrames;
 
     private FrameListener frameListener;
 
-    private IORegMemory iorMem;
+    private VideoState video;
+    private ObjectTable objects;
+    private ScanlineRenderer renderer;
+    private BitmapFrames bitmapFrames;
     private PaletteMemory palMem;
+
+    // A line is not drawn again while its LCD registers (but EVA, EVB and
+    // EVY) are the ones it was drawn with and video and object memory were
+    // not written since: contentEpoch changes after each write
     private VideoMemory vidMem;
     private ObjectMemory objMem;
+    private long[] vramPages, oamPages;
+    private int contentEpoch;
+    private final VideoState[] renderedStates;
+    private final int[] lineEpochs;
+
+    // Deferred rendering (-Dygba.gfx.threads=N with N > 1): drawLine only
+    // copies the LCD registers of the line, and the lines are drawn in N
+    // strips on RenderPool at VBlank, or before a store to video or object
+    // memory that the pending lines read (16KB blocks of video memory, any
+    // OAM entry if they show OBJs). A palette store does not draw them: they
+    // get a copy of the palette of their HBlank instead, used to resolve
+    // them. Stores that hit what the pending lines read (HBlank DMA to the
+    // BG maps, for instance) still cost one render per line, on the CPU
+    // thread.
+    private final int renderThreadCount;
+    private ScanlineRenderer[] stripRenderers;
+    private VideoState[] lineStates;
+    private int pendingFirstLine, pendingLineCount;
+    private int pendingVRAMBlocks;
+    private boolean isOAMPending;
+
+    // Palette of the lines drawn before a palette store (null: the current
+    // palette); snapshots are reused once every line is resolved
+    private PaletteSnapshot[] linePalettes;
+    private PaletteSnapshot[] paletteSnapshots;
+    private int paletteSnapshotCount;
 
 
     public GFX() {
         pixels = new int[XScreenSize * YScreenSize];
+        indexedFrame = new IndexedFrame();
+        renderedStates = new VideoState[YScreenSize];
+        for (int y = 0; y < YScreenSize; y++) renderedStates[y] = new VideoState();
+        lineEpochs = new int[YScreenSize];
+        renderThreadCount = Math.max(Integer.getInteger("ygba.gfx.threads", 1), 1);
+        setLayerCaptureEnabled(Boolean.getBoolean("ygba.debug.layers"));
     }
 
     public void connectToMemory(Memory memory) {
-        iorMem = memory.getIORegMemory();
+        video = memory.getIORegMemory().getVideoState();
         palMem = (PaletteMemory) memory.getBank(0x05);
         vidMem = (VideoMemory) memory.getBank(0x06);
         objMem = (ObjectMemory) memory.getBank(0x07);
+        objects = objMem.getObjectTable();
+        vramPages = vidMem.createDirtyPageSet();
+        oamPages = objMem.createDirtyPageSet();
+        contentEpoch++;
+        bitmapFrames = new BitmapFrames(memory);
+        renderer = new ScanlineRenderer(memory, indexedFrame, bitmapFrames);
+        renderer.setLayerFrames(layerFrames);
+
+        if (renderThreadCount > 1) {
+            stripRenderers = new ScanlineRenderer[renderThreadCount];
+            for (int i = 0; i < renderThreadCount; i++) {
+                stripRenderers[i] = new ScanlineRenderer(memory, indexedFrame, bitmapFrames);
+                stripRenderers[i].setLayerFrames(layerFrames);
+            }
+            lineStates = new VideoState[YScreenSize];
+            for (int y = 0; y < YScreenSize; y++) lineStates[y] = new VideoState();
+            linePalettes = new PaletteSnapshot[YScreenSize];
+            paletteSnapshots = new PaletteSnapshot[YScreenSize];
+        }
+        clearPendingLines();
+        unresolvedFirstLine = unresolvedLastLine = 0;
+        releasePaletteSnapshots();
     }
 
     public void setFrameListener(FrameListener listener) {
@@ -62,16 +126,44 @@ public final class GFX {
         return pixels;
     }
 
+    // Palette indices / RGB555 colors of the last frame, before the palette
+    // and the color special effects were applied
+    public IndexedFrame getIndexedFrame() {
+        return indexedFrame;
+    }
+
     public void reset() {
+        clearPendingLines();
+        unresolvedFirstLine = unresolvedLastLine = 0;
+        releasePaletteSnapshots();
+        contentEpoch++;
+        indexedFrame.clear();
         for (int i = 0; i < pixels.length; i++) pixels[i] = 0;
-        for (int layer = 0; layer < layerFrames.length; layer++) {
-            for (int i = 0; i < layerFrames[layer].length; i++) {
-                layerFrames[layer][i] = 0;
+        if (layerFrames != null) {
+            for (int layer = 0; layer < layerFrames.length; layer++) {
+                for (int i = 0; i < layerFrames[layer].length; i++) {
+                    layerFrames[layer][i] = 0;
+                }
             }
         }
         if (frameListener != null) frameListener.onFrameReady(pixels);
     }
 
+    // Keeps a copy of each layer of the frame for getLayerCRC32 and
+    // getLayerNonZeroCount; also enabled with -Dygba.debug.layers=true
+    public void setLayerCaptureEnabled(boolean isEnabled) {
+        if (isEnabled == isLayerCaptureEnabled()) return;
+        layerFrames = isEnabled ? new int[5][XScreenSize * YScreenSize] : null;
+        if (renderer != null) renderer.setLayerFrames(layerFrames);
+        if (stripRenderers != null) {
+            for (ScanlineRenderer stripRenderer : stripRenderers) stripRenderer.setLayerFrames(layerFrames);
+        }
+    }
+
+    public boolean isLayerCaptureEnabled() {
+        return (layerFrames != null);
+    }
+
     private static long crc32Pixels(int[] data) {
         CRC32 crc32 = new CRC32();
         for (int pixel : data) {
@@ -84,12 +176,12 @@ public final class GFX {
     }
 
     public long getLayerCRC32(int layer) {
-        if (layer < 0 || layer >= layerFrames.length) return 0;
+        if (layerFrames == null || layer < 0 || layer >= layerFrames.length) return 0;
         return crc32Pixels(layerFrames[layer]);
     }
 
     public int getLayerNonZeroCount(int layer) {
-        if (layer < 0 || layer >= layerFrames.length) return 0;
+        if (layerFrames == null || layer < 0 || layer >= layerFrames.length) return 0;
         int nonZero = 0;
         int[] frame = layerFrames[layer];
         for (int color : frame) {
@@ -101,625 +193,233 @@ public final class GFX {
 
     public void drawLine(int y) {
         if (y < YScreenSize) {
-            switch (iorMem.getVideoMode()) {
-                case 0: drawMode0Line(y); break;
-                case 1: drawMode1Line(y); break;
-                case 2: drawMode2Line(y); break;
-                case 3: drawMode3Line(y); break;
-                case 4: drawMode4Line(y); break;
-                case 5: drawMode5Line(y); break;
+            if (stripRenderers == null) {
+                updateContentEpoch();
+                if (video.videoMode >= 3) bitmapFrames.update();
+                drawLine(renderer, y, video);
+                addUnresolvedLines(y, y + 1);
+            } else {
+                if (pendingLineCount != 0 && y != pendingFirstLine + pendingLineCount) renderPendingLines();
+                if (pendingLineCount == 0) pendingFirstLine = y;
+                lineStates[y].copyFrom(video);
+                pendingLineCount++;
+                pendingVRAMBlocks |= getVRAMBlocks(video);
+                if (video.isOBJEnabled || video.isOBJWinEnabled) isOAMPending = true;
             }
         } else if (y == YScreenSize) {
+            resolvePendingLines();
             if (frameListener != null) frameListener.onFrameReady(pixels);
         }
     }
 
-    // ===== Scanline buffer management =====
-
-    private void initScanlineBuffers(int yScreen) {
-        computeWindowFlags(yScreen);
-        for (int x = 0; x < XScreenSize; x++) {
-            bgPixels[0][x] = 0;
-            bgPixels[1][x] = 0;
-            bgPixels[2][x] = 0;
-            bgPixels[3][x] = 0;
-            objPixels[x] = 0;
-            objPri[x] = 4;
-            objSemiTrans[x] = false;
+    // Draws line y with state, unless it is still in the indexed frame
+    private void drawLine(ScanlineRenderer lineRenderer, int y, VideoState state) {
+        if (layerFrames == null && lineEpochs[y] == contentEpoch && renderedStates[y].hasSameLayers(state)) {
+            indexedFrame.setEffectCoefficients(y, state.eva, state.evb, state.evy);
+            return;
         }
+        lineRenderer.drawLine(y, state);
+        renderedStates[y].copyFrom(state);
+        lineEpochs[y] = contentEpoch;
     }
 
-    private static int clipWindowStart(int start, int max) {
-        return (start > max) ? max : start;
-    }
-
-    private static int clipWindowEnd(int start, int end, int max) {
-        // Hardware treats invalid ranges (end > max or start > end) as end=max.
-        if (end > max || start > end) return max;
-        return end;
+    private void updateContentEpoch() {
+        vidMem.updateDirtyPageSets();
+        objMem.updateDirtyPageSets();
+        if (clearPages(vramPages) | clearPages(oamPages)) contentEpoch++;
     }
 
-    private void computeWindowFlags(int yScreen) {
-        boolean win0Enabled = iorMem.isWinEnabled(0);
-        boolean win1Enabled = iorMem.isWinEnabled(1);
-        boolean objWinEnabled = iorMem.isOBJWinEnabled();
-
-        if (!win0Enabled && !win1Enabled && !objWinEnabled) {
-            for (int x = 0; x < XScreenSize; x++) windowFlags[x] = 0x3F;
-            return;
-        }
-
-        int outsideFlags = iorMem.getWinOutside();
-        for (int x = 0; x < XScreenSize; x++) windowFlags[x] = outsideFlags;
-
-        if (objWinEnabled) {
-            drawOBJWindowMaskLine(yScreen);
-            int objWinFlags = iorMem.getWinOBJ();
-            for (int x = 0; x < XScreenSize; x++) {
-                if (objWindowMask[x]) windowFlags[x] = objWinFlags;
-            }
-        }
-
-        if (win1Enabled) {
-            int left = clipWindowStart(iorMem.getWin1Left(), XScreenSize);
-            int top = clipWindowStart(iorMem.getWin1Top(), YScreenSize);
-            int right = clipWindowEnd(left, iorMem.getWin1Right(), XScreenSize);
-            int bottom = clipWindowEnd(top, iorMem.getWin1Bottom(), YScreenSize);
-            boolean inV = (yScreen >= top && yScreen < bottom);
-            if (inV) {
-                int flags = iorMem.getWinInside(1);
-                for (int x = left; x < right; x++) windowFlags[x] = flags;
+    // Clears a dirty page set, returns whether a page was set
+    private static boolean clearPages(long[] pages) {
+        boolean isDirty = false;
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != 0) {
+                pages[i] = 0;
+                isDirty = true;
             }
         }
+        return isDirty;
+    }
 
-        if (win0Enabled) {
-            int left = clipWindowStart(iorMem.getWin0Left(), XScreenSize);
-            int top = clipWindowStart(iorMem.getWin0Top(), YScreenSize);
-            int right = clipWindowEnd(left, iorMem.getWin0Right(), XScreenSize);
-            int bottom = clipWindowEnd(top, iorMem.getWin0Bottom(), YScreenSize);
-            boolean inV = (yScreen >= top && yScreen < bottom);
-            if (inV) {
-                int flags = iorMem.getWinInside(0);
-                for (int x = left; x < right; x++) windowFlags[x] = flags;
-            }
+    private void addUnresolvedLines(int firstLine, int lastLine) {
+        if (unresolvedFirstLine == unresolvedLastLine) {
+            unresolvedFirstLine = firstLine;
+            unresolvedLastLine = lastLine;
+        } else {
+            unresolvedFirstLine = Math.min(unresolvedFirstLine, firstLine);
+            unresolvedLastLine = Math.max(unresolvedLastLine, lastLine);
         }
     }
 
-    // ===== Priority-sorted compositing (matches GBA hardware) =====
+    private void clearPendingLines() {
+        pendingLineCount = 0;
+        pendingVRAMBlocks = 0;
+        isOAMPending = false;
+    }
 
-    private void composeScanline(int yScreen) {
-        int blendMode = iorMem.getBlendMode();
-        int eva = iorMem.getEVA();
-        int evb = iorMem.getEVB();
-        int evy = iorMem.getEVY();
+    private final static int VRAMBlockShift = 14;
 
-        boolean[] firstTarget = new boolean[6];
-        boolean[] secondTarget = new boolean[6];
-        for (int i = 0; i < 5; i++) {
-            firstTarget[i] = iorMem.isFirstTarget(i);
-            secondTarget[i] = iorMem.isSecondTarget(i);
-        }
-        firstTarget[LAYER_BD] = iorMem.isFirstTargetBD();
-        secondTarget[LAYER_BD] = iorMem.isSecondTargetBD();
-
-        int[] bgPri = new int[4];
-        for (int i = 0; i < 4; i++) bgPri[i] = iorMem.getPriority(i);
-
-        int backdrop = toRGBA(palMem.getHalfWord(0));
-        int lineOffset = yScreen * XScreenSize;
-
-        for (int x = 0; x < XScreenSize; x++) {
-            int wf = windowFlags[x];
-            layerFrames[0][lineOffset + x] = bgPixels[0][x];
-            layerFrames[1][lineOffset + x] = bgPixels[1][x];
-            layerFrames[2][lineOffset + x] = bgPixels[2][x];
-            layerFrames[3][lineOffset + x] = bgPixels[3][x];
-            layerFrames[4][lineOffset + x] = objPixels[x];
-
-            // Find top two non-transparent, window-visible pixels by priority
-            int topColor = backdrop, botColor = backdrop;
-            int topLayer = LAYER_BD, botLayer = LAYER_BD;
-            boolean forceAlpha = false;
-            boolean foundTop = false, foundBot = false;
-
-            for (int p = 0; p <= 3; p++) {
-                // OBJ wins over BG at same priority
-                if (!foundBot && objPixels[x] != 0 && objPri[x] == p && (wf & 0x10) != 0) {
-                    if (!foundTop) {
-                        topColor = objPixels[x]; topLayer = LAYER_OBJ;
-                        forceAlpha = objSemiTrans[x];
-                        foundTop = true;
-                    } else {
-                        botColor = objPixels[x]; botLayer = LAYER_OBJ;
-                        foundBot = true;
-                    }
-                }
-                // BG0 has highest priority among BGs, BG3 lowest
-                for (int bg = 0; bg <= 3 && !foundBot; bg++) {
-                    if (bgPixels[bg][x] != 0 && bgPri[bg] == p && (wf & (1 << bg)) != 0) {
-                        if (!foundTop) {
-                            topColor = bgPixels[bg][x]; topLayer = bg;
-                            foundTop = true;
-                        } else {
-                            botColor = bgPixels[bg][x]; botLayer = bg;
-                            foundBot = true;
-                        }
-                    }
-                }
-                if (foundBot) break;
-            }
+    // Blocks [start >> 14, (end - 1) >> 14] of video memory, one bit each
+    private static int getVRAMBlocks(int start, int end) {
+        int firstBlock = start >>> VRAMBlockShift;
+        int lastBlock = (Math.min(end, 0x18000) - 1) >>> VRAMBlockShift;
+        return ((2 << lastBlock) - 1) & ~((1 << firstBlock) - 1);
+    }
 
-            // Apply color special effects
-            int color = topColor;
-
-            if (forceAlpha && secondTarget[botLayer]) {
-                // Semi-transparent OBJ: force alpha blend, ignores BLDCNT mode & window SFX bit
-                color = alphaBlend(topColor, botColor, eva, evb);
-            } else if (blendMode != 0 && (wf & WIN_SFX_BIT) != 0) {
-                if (blendMode == 1 && firstTarget[topLayer] && secondTarget[botLayer]) {
-                    color = alphaBlend(topColor, botColor, eva, evb);
-                } else if (blendMode == 2 && firstTarget[topLayer]) {
-                    color = brighten(topColor, evy);
-                } else if (blendMode == 3 && firstTarget[topLayer]) {
-                    color = darken(topColor, evy);
+    // 16KB blocks of video memory that a line drawn with state may read;
+    // the BG areas are rounded up to the largest tile and map ranges
+    private static int getVRAMBlocks(VideoState state) {
+        int blocks = 0;
+        if (state.videoMode >= 3) {
+            blocks = getVRAMBlocks(0x00000, 0x14000); // Frame buffers
+        } else {
+            for (int bg = 0; bg < 4; bg++) {
+                if (!state.isBGEnabled[bg]) continue;
+                boolean isTextBG = (state.videoMode == 0) || ((state.videoMode == 1) && (bg < 2));
+                int characterBase = state.characterBaseAddress[bg];
+                int screenBase = state.screenBaseAddress[bg];
+                if (isTextBG) {
+                    int tilesSize = state.is256ColorPalette[bg] ? 0x10000 : 0x8000;
+                    int mapSize = (state.textModeXSize[bg] * state.textModeYSize[bg]) >>> 5;
+                    blocks |= getVRAMBlocks(characterBase, characterBase + tilesSize);
+                    blocks |= getVRAMBlocks(screenBase, screenBase + mapSize);
+                } else {
+                    int xySize = state.rotScalModeXYSize[bg];
+                    blocks |= getVRAMBlocks(characterBase, characterBase + 0x4000);
+                    blocks |= getVRAMBlocks(screenBase, screenBase + ((xySize * xySize) >>> 6));
                 }
             }
-
-            pixels[lineOffset + x] = color;
         }
+        if (state.isOBJEnabled || state.isOBJWinEnabled) {
+            blocks |= getVRAMBlocks(0x10000, 0x18000); // OBJ tiles
+        }
+        return blocks;
     }
 
-    private static int alphaBlend(int a, int b, int eva, int evb) {
-        int r = ((((a >>> 19) & 0x1F) * eva) + (((b >>> 19) & 0x1F) * evb)) >> 4;
-        int g = ((((a >>> 11) & 0x1F) * eva) + (((b >>> 11) & 0x1F) * evb)) >> 4;
-        int bl = ((((a >>> 3) & 0x1F) * eva) + (((b >>> 3) & 0x1F) * evb)) >> 4;
-        if (r > 31) r = 31; if (g > 31) g = 31; if (bl > 31) bl = 31;
-        return 0xFF000000 | (r << 19) | (g << 11) | (bl << 3);
-    }
-
-    private static int brighten(int c, int evy) {
-        int r = (c >>> 19) & 0x1F, g = (c >>> 11) & 0x1F, b = (c >>> 3) & 0x1F;
-        r += (31 - r) * evy >> 4; g += (31 - g) * evy >> 4; b += (31 - b) * evy >> 4;
-        return 0xFF000000 | (r << 19) | (g << 11) | (b << 3);
-    }
-
-    private static int darken(int c, int evy) {
-        int r = (c >>> 19) & 0x1F, g = (c >>> 11) & 0x1F, b = (c >>> 3) & 0x1F;
-        r -= r * evy >> 4; g -= g * evy >> 4; b -= b * evy >> 4;
-        return 0xFF000000 | (r << 19) | (g << 11) | (b << 3);
+    // Called before video memory is written at offset (internal offset)
+    public void beforeVideoMemoryStore(int offset) {
+        if ((pendingVRAMBlocks & (1 << (offset >>> VRAMBlockShift))) != 0) renderPendingLines();
     }
 
-    // ===== Mode draw methods =====
-
-    private void drawMode0Line(int yScreen) {
-        initScanlineBuffers(yScreen);
-        if (iorMem.isBGEnabled(0)) drawBGTextModeLine(yScreen, 0);
-        if (iorMem.isBGEnabled(1)) drawBGTextModeLine(yScreen, 1);
-        if (iorMem.isBGEnabled(2)) drawBGTextModeLine(yScreen, 2);
-        if (iorMem.isBGEnabled(3)) drawBGTextModeLine(yScreen, 3);
-        if (iorMem.isOBJEnabled()) drawOBJLine(yScreen);
-        composeScanline(yScreen);
+    public void beforeObjectMemoryStore() {
+        if (isOAMPending) renderPendingLines();
     }
 
-    private void drawMode1Line(int yScreen) {
-        initScanlineBuffers(yScreen);
-        if (iorMem.isBGEnabled(0)) drawBGTextModeLine(yScreen, 0);
-        if (iorMem.isBGEnabled(1)) drawBGTextModeLine(yScreen, 1);
-        if (iorMem.isBGEnabled(2)) drawBGRotScalModeLine(yScreen, 2);
-        if (iorMem.isOBJEnabled()) drawOBJLine(yScreen);
-        composeScanline(yScreen);
+    // Lines already drawn are resolved with the palette they were drawn
+    // with; lines still pending keep a copy of it
+    public void beforePaletteMemoryStore() {
+        if (pendingLineCount == 0 || layerFrames != null) {
+            // Captured layers are converted when drawn
+            resolvePendingLines();
+            return;
+        }
+        resolveLines();
+        int endLine = pendingFirstLine + pendingLineCount;
+        int firstLine = endLine;
+        while (firstLine > pendingFirstLine && linePalettes[firstLine - 1] == null) firstLine--;
+        if (firstLine == endLine) return;
+        PaletteSnapshot snapshot = getPaletteSnapshot();
+        for (int y = firstLine; y < endLine; y++) linePalettes[y] = snapshot;
     }
 
-    private void drawMode2Line(int yScreen) {
-        initScanlineBuffers(yScreen);
-        if (iorMem.isBGEnabled(2)) drawBGRotScalModeLine(yScreen, 2);
-        if (iorMem.isBGEnabled(3)) drawBGRotScalModeLine(yScreen, 3);
-        if (iorMem.isOBJEnabled()) drawOBJLine(yScreen);
-        composeScanline(yScreen);
+    private final static class PaletteSnapshot {
+        final int[] colors = new int[0x200];
+        final int[] rgb15Colors = new int[0x200];
+        int[] colorTable;
     }
 
-    private void drawMode3Line(int yScreen) {
-        initScanlineBuffers(yScreen);
-        if (iorMem.isBGEnabled(2)) {
-            boolean isMosaicEnabled = iorMem.isMosaicEnabled(2);
-            int xMosaic = iorMem.getBGMosaicXSize();
-            int yMosaic = iorMem.getBGMosaicYSize();
-            int y = (isMosaicEnabled ? (yScreen - (yScreen % yMosaic)) : yScreen);
-            for (int xScreen = 0; xScreen < XScreenSize; xScreen++) {
-                int x = (isMosaicEnabled ? (xScreen - (xScreen % xMosaic)) : xScreen);
-                short rgb15 = vidMem.getHalfWord(((y * XScreenSize) + x) * 2);
-                bgPixels[2][xScreen] = toRGBA(rgb15);
-            }
+    private PaletteSnapshot getPaletteSnapshot() {
+        PaletteSnapshot snapshot = paletteSnapshots[paletteSnapshotCount];
+        if (snapshot == null) {
+            snapshot = new PaletteSnapshot();
+            paletteSnapshots[paletteSnapshotCount] = snapshot;
         }
-        if (iorMem.isOBJEnabled()) drawOBJLine(yScreen);
-        composeScanline(yScreen);
+        paletteSnapshotCount++;
+        System.arraycopy(palMem.getColors(), 0, snapshot.colors, 0, snapshot.colors.length);
+        System.arraycopy(palMem.getRGB15Colors(), 0, snapshot.rgb15Colors, 0, snapshot.rgb15Colors.length);
+        snapshot.colorTable = palMem.getColorTable();
+        return snapshot;
     }
 
-    private void drawMode4Line(int yScreen) {
-        initScanlineBuffers(yScreen);
-        if (iorMem.isBGEnabled(2)) {
-            int frameAddress = (iorMem.isFrame1Selected() ? 0xA000 : 0x0000);
-            boolean isMosaicEnabled = iorMem.isMosaicEnabled(2);
-            int xMosaic = iorMem.getBGMosaicXSize();
-            int yMosaic = iorMem.getBGMosaicYSize();
-            int y = (isMosaicEnabled ? (yScreen - (yScreen % yMosaic)) : yScreen);
-            for (int xScreen = 0; xScreen < XScreenSize; xScreen++) {
-                int x = (isMosaicEnabled ? (xScreen - (xScreen % xMosaic)) : xScreen);
-                int colorIndex = vidMem.getByte(frameAddress + ((y * XScreenSize) + x)) & 0xFF;
-                short rgb15 = palMem.getHalfWord(colorIndex * 2);
-                bgPixels[2][xScreen] = toRGBA(rgb15);
-            }
+    private void releasePaletteSnapshots() {
+        if (linePalettes != null) {
+            for (int y = 0; y < YScreenSize; y++) linePalettes[y] = null;
         }
-        if (iorMem.isOBJEnabled()) drawOBJLine(yScreen);
-        composeScanline(yScreen);
+        paletteSnapshotCount = 0;
     }
 
-    private void drawMode5Line(int yScreen) {
-        initScanlineBuffers(yScreen);
-        if (iorMem.isBGEnabled(2) && yScreen < 128) {
-            int frameAddress = (iorMem.isFrame1Selected() ? 0xA000 : 0x0000);
-            for (int xScreen = 0; xScreen < 160; xScreen++) {
-                short rgb15 = vidMem.getHalfWord(frameAddress + ((yScreen * 160) + xScreen) * 2);
-                bgPixels[2][xScreen] = toRGBA(rgb15);
+    // Draws the lines deferred so far, so that they see the memory of
+    // their HBlank
+    public void renderPendingLines() {
+        if (pendingLineCount == 0) return;
+        updateContentEpoch();
+        objects.update();
+        bitmapFrames.update();
+        for (int y = pendingFirstLine; y < pendingFirstLine + pendingLineCount; y++) {
+            VideoState state = lineStates[y];
+            if (state.videoMode >= 3 && state.videoMode <= 5) {
+                bitmapFrames.prepare(BitmapFrames.getLayout(state.videoMode, state.isFrame1Selected));
             }
         }
-        if (iorMem.isOBJEnabled()) drawOBJLine(yScreen);
-        composeScanline(yScreen);
+        int stripCount = Math.min(stripRenderers.length, pendingLineCount);
+        RenderPool.invoke(new RenderStrips(0, stripCount, stripCount));
+        addUnresolvedLines(pendingFirstLine, pendingFirstLine + pendingLineCount);
+        clearPendingLines();
     }
 
-    // ===== Background layer rendering =====
-
-    private void drawBGTextModeLine(int yScreen, int bgNumber) {
-        int characterBase = iorMem.getCharacterBaseAddress(bgNumber);
-        int screenBase = iorMem.getScreenBaseAddress(bgNumber);
-
-        int xSize = iorMem.getTextModeXSize(bgNumber);
-        int ySize = iorMem.getTextModeYSize(bgNumber);
-        int xMask = xSize - 1;
-        int yMask = ySize - 1;
-
-        int xOffset = iorMem.getXOffset(bgNumber);
-        int yOffset = iorMem.getYOffset(bgNumber);
-
-        boolean is256ColorPalette = iorMem.is256ColorPalette(bgNumber);
-        int screenBlocksPerRow = (xSize >>> 8); // 1 (256px) or 2 (512px)
-
-        boolean isMosaicEnabled = iorMem.isMosaicEnabled(bgNumber);
-        int xMosaic = iorMem.getBGMosaicXSize();
-        int yMosaic = iorMem.getBGMosaicYSize();
-
-        int y = (isMosaicEnabled ? (yScreen - (yScreen % yMosaic)) : yScreen);
-        y = (y + yOffset) & yMask;
-        int mapY = y >>> 8;
-        int localY = y & 0xFF;
-        int yTileDataOffset = (localY >>> 3) * 32;
-        int tileY = localY & 0x07;
-
-        int[] buf = bgPixels[bgNumber];
-
-        for (int xScreen = 0; xScreen < XScreenSize; xScreen++) {
-            int x = (isMosaicEnabled ? (xScreen - (xScreen % xMosaic)) : xScreen);
-            x = (x + xOffset) & xMask;
-
-            int mapX = x >>> 8;
-            int localX = x & 0xFF;
-            int xTileDataOffset = (localX >>> 3);
-            int tileX = localX & 0x07;
-
-            int screenBlockOffset = ((mapY * screenBlocksPerRow) + mapX) * 0x0800;
-            int tileDataOffset = ((yTileDataOffset + xTileDataOffset) * 2) + screenBlockOffset;
-            short tileData = vidMem.getHalfWord(screenBase + tileDataOffset);
-
-            int tileNumber = tileData & 0x03FF;
-            int localTileY = tileY;
-            if ((tileData & 0x0400) != 0) tileX = 7 - tileX;
-            if ((tileData & 0x0800) != 0) localTileY = 7 - tileY;
-
-            if (is256ColorPalette) {
-                int colorIndex = vidMem.getByte(characterBase + (tileNumber * 64) + (localTileY * 8) + tileX) & 0xFF;
-                if (colorIndex != 0) {
-                    buf[xScreen] = toRGBA(palMem.getHalfWord(colorIndex * 2));
-                }
-            } else {
-                int colorIndex = vidMem.getByte(characterBase + (tileNumber * 32) + (localTileY * 4) + (tileX / 2)) & 0xFF;
-                if ((tileX & 0x01) != 0) colorIndex >>>= 4;
-                else colorIndex &= 0x0F;
-                if (colorIndex != 0) {
-                    int paletteNumber = (tileData >>> 12) & 0x0F;
-                    buf[xScreen] = toRGBA(palMem.getHalfWord(((paletteNumber * 16) + colorIndex) * 2));
-                }
-            }
-        }
+    // Draws the pending lines and converts the lines drawn since the last
+    // call to pixels; called at VBlank and before the color table changes
+    public void resolvePendingLines() {
+        renderPendingLines();
+        resolveLines();
     }
 
-    private void drawBGRotScalModeLine(int yScreen, int bgNumber) {
-        int characterBase = iorMem.getCharacterBaseAddress(bgNumber);
-        int screenBase = iorMem.getScreenBaseAddress(bgNumber);
-
-        int xySize = iorMem.getRotScalModeXYSize(bgNumber);
-        int xyMask = xySize - 1;
-
-        int xCoordinate = iorMem.getXCoordinate(bgNumber);
-        int yCoordinate = iorMem.getYCoordinate(bgNumber);
-
-        int pa = iorMem.getPA(bgNumber);
-        int pb = iorMem.getPB(bgNumber);
-        int pc = iorMem.getPC(bgNumber);
-        int pd = iorMem.getPD(bgNumber);
-
-        boolean wraparoundEnabled = iorMem.isWraparoundOverflow(bgNumber);
-
-        int xCur = (yScreen * pb) + xCoordinate;
-        int yCur = (yScreen * pd) + yCoordinate;
-
-        int[] buf = bgPixels[bgNumber];
-
-        for (int xScreen = 0; xScreen < XScreenSize; xScreen++) {
-            int x = xCur >> 8;
-            int y = yCur >> 8;
-
-            if (wraparoundEnabled) { x &= xyMask; y &= xyMask; }
-
-            if (x >= 0 && x < xySize && y >= 0 && y < xySize) {
-                int tileNumber = vidMem.getByte(screenBase + ((y >>> 3) * (xySize / 8)) + (x >>> 3)) & 0xFF;
-                int colorIndex = vidMem.getByte(characterBase + (tileNumber * 64) + ((y & 7) * 8) + (x & 7)) & 0xFF;
-                if (colorIndex != 0) {
-                    buf[xScreen] = toRGBA(palMem.getHalfWord(colorIndex * 2));
+    // Converts the lines drawn but not yet resolved to pixels, with their
+    // palette snapshot or the current palette
+    private void resolveLines() {
+        if (unresolvedFirstLine == unresolvedLastLine) return;
+        for (int y = unresolvedFirstLine; y < unresolvedLastLine; y++) {
+            PaletteSnapshot snapshot = (linePalettes != null) ? linePalettes[y] : null;
+            // Modes 6 and 7 draw nothing: their lines keep the pixels they had
+            if (renderedStates[y].videoMode <= 5) {
+                if (snapshot != null) {
+                    indexedFrame.resolve(y, y + 1, pixels, snapshot.colors, snapshot.rgb15Colors, snapshot.colorTable);
+                } else {
+                    indexedFrame.resolve(y, y + 1, pixels, palMem.getColors(), palMem.getRGB15Colors(), palMem.getColorTable());
                 }
             }
-
-            xCur += pa;
-            yCur += pc;
+            if (snapshot != null) linePalettes[y] = null;
         }
+        unresolvedFirstLine = unresolvedLastLine = 0;
+        if (pendingLineCount == 0) paletteSnapshotCount = 0;
     }
 
-    // ===== OBJ (sprite) rendering =====
-
-    private void drawOBJWindowMaskLine(int yScreen) {
-        for (int x = 0; x < XScreenSize; x++) objWindowMask[x] = false;
-
-        int vidBase = 0x00010000;
-        boolean is1DMapping = iorMem.isOBJ1DMapping();
-
-        for (int objNumber = 127; objNumber >= 0; objNumber--) {
-            if (!objMem.isOBJWindowMode(objNumber)) continue;
+    // Draws strips [firstStrip, lastStrip) of the pending lines, each one
+    // with its own renderer
+    @SuppressWarnings("serial") // Never serialized
+    private final class RenderStrips extends RecursiveAction {
 
-            boolean isRotScalEnabled = objMem.isRotScalEnabled(objNumber);
-            int xSize = objMem.getXSize(objNumber);
-            int ySize = objMem.getYSize(objNumber);
-            if (xSize == 0 || ySize == 0) continue;
+        private final int firstStrip, lastStrip, stripCount;
 
-            int xCoordinate = objMem.getXCoordinate(objNumber);
-            int yCoordinate = objMem.getYCoordinate(objNumber);
-
-            boolean is256ColorPalette = objMem.is256ColorPalette(objNumber);
-            int xTiles = xSize >>> 3;
-
-            int firstTileNumber = objMem.getTileNumber(objNumber);
-            int tileNumberIncrement;
-            if (is1DMapping) {
-                tileNumberIncrement = (is256ColorPalette ? xTiles * 2 : xTiles);
-            } else {
-                tileNumberIncrement = 32;
-                if (is256ColorPalette) firstTileNumber &= 0xFFFE;
-            }
-
-            if (!isRotScalEnabled) {
-                if (!objMem.isDisplayable(objNumber)) continue;
-
-                boolean isHFlip = objMem.isHFlipEnabled(objNumber);
-                boolean isVFlip = objMem.isVFlipEnabled(objNumber);
-
-                int yC = yCoordinate;
-                if (yC >= YScreenSize) yC -= 256;
-
-                if (yScreen >= yC && yScreen < yC + ySize) {
-                    int ySprite = yScreen - yC;
-
-                    for (int xSprite = 0; xSprite < xSize; xSprite++) {
-                        int xScreen = xCoordinate + xSprite;
-                        if (xScreen < 0 || xScreen >= XScreenSize) continue;
-
-                        int sx = isHFlip ? xSize - 1 - xSprite : xSprite;
-                        int sy = isVFlip ? ySize - 1 - ySprite : ySprite;
-
-                        if (isOBJPixelOpaque(vidBase, firstTileNumber, tileNumberIncrement,
-                                is256ColorPalette, sx, sy)) {
-                            objWindowMask[xScreen] = true;
-                        }
-                    }
-                }
-            } else {
-                boolean isDoubleSize = objMem.isDoubleSizeEnabled(objNumber);
-
-                int displayWidth = isDoubleSize ? xSize * 2 : xSize;
-                int displayHeight = isDoubleSize ? ySize * 2 : ySize;
-
-                int yC = yCoordinate;
-                if (yC >= YScreenSize) yC -= 256;
-
-                if (yScreen >= yC && yScreen < yC + displayHeight) {
-                    int groupNumber = objMem.getRotScalGroupNumber(objNumber);
-                    int pa = objMem.getPA(groupNumber);
-                    int pb = objMem.getPB(groupNumber);
-                    int pc = objMem.getPC(groupNumber);
-                    int pd = objMem.getPD(groupNumber);
-
-                    int halfW = xSize >> 1;
-                    int halfH = ySize >> 1;
-                    int iy = yScreen - yC - (displayHeight >> 1);
-
-                    for (int ix0 = 0; ix0 < displayWidth; ix0++) {
-                        int xScreen = xCoordinate + ix0;
-                        if (xScreen < 0 || xScreen >= XScreenSize) continue;
-
-                        int ix = ix0 - (displayWidth >> 1);
-                        int texX = ((pa * ix + pb * iy) >> 8) + halfW;
-                        int texY = ((pc * ix + pd * iy) >> 8) + halfH;
-
-                        if (texX >= 0 && texX < xSize && texY >= 0 && texY < ySize &&
-                                isOBJPixelOpaque(vidBase, firstTileNumber, tileNumberIncrement,
-                                    is256ColorPalette, texX, texY)) {
-                            objWindowMask[xScreen] = true;
-                        }
-                    }
-                }
-            }
+        RenderStrips(int firstStrip, int lastStrip, int stripCount) {
+            this.firstStrip = firstStrip;
+            this.lastStrip = lastStrip;
+            this.stripCount = stripCount;
         }
-    }
 
-    private void drawOBJLine(int yScreen) {
-        int vidBase = 0x00010000;
-        int palBase = 0x00000200;
-        boolean is1DMapping = iorMem.isOBJ1DMapping();
-
-        // Iterate 127→0 so lower OBJ numbers overwrite higher (at same priority)
-        for (int objNumber = 127; objNumber >= 0; objNumber--) {
-            boolean isRotScalEnabled = objMem.isRotScalEnabled(objNumber);
-
-            int xSize = objMem.getXSize(objNumber);
-            int ySize = objMem.getYSize(objNumber);
-            if (xSize == 0 || ySize == 0) continue;
-
-            if (objMem.isOBJWindowMode(objNumber)) continue;
-
-            int xCoordinate = objMem.getXCoordinate(objNumber);
-            int yCoordinate = objMem.getYCoordinate(objNumber);
-
-            boolean is256ColorPalette = objMem.is256ColorPalette(objNumber);
-            int paletteNumber = objMem.getPaletteNumber(objNumber);
-            int xTiles = xSize >>> 3;
-
-            int firstTileNumber = objMem.getTileNumber(objNumber);
-            int tileNumberIncrement;
-            if (is1DMapping) {
-                tileNumberIncrement = (is256ColorPalette ? xTiles * 2 : xTiles);
-            } else {
-                tileNumberIncrement = 32;
-                if (is256ColorPalette) firstTileNumber &= 0xFFFE;
+        protected void compute() {
+            if (lastStrip - firstStrip > 1) {
+                int middleStrip = (firstStrip + lastStrip) >>> 1;
+                invokeAll(new RenderStrips(firstStrip, middleStrip, stripCount),
+                        new RenderStrips(middleStrip, lastStrip, stripCount));
+                return;
             }
-
-            int objPriority = objMem.getPriority(objNumber);
-            boolean isSemiTransparent = objMem.isOBJMode1(objNumber);
-
-            if (!isRotScalEnabled) {
-                if (!objMem.isDisplayable(objNumber)) continue;
-
-                boolean isHFlip = objMem.isHFlipEnabled(objNumber);
-                boolean isVFlip = objMem.isVFlipEnabled(objNumber);
-
-                int yC = yCoordinate;
-                if (yC >= YScreenSize) yC -= 256;
-
-                if (yScreen >= yC && yScreen < yC + ySize) {
-                    int ySprite = yScreen - yC;
-
-                    for (int xSprite = 0; xSprite < xSize; xSprite++) {
-                        int xScreen = xCoordinate + xSprite;
-                        if (xScreen < 0 || xScreen >= XScreenSize) continue;
-
-                        int sx = isHFlip ? xSize - 1 - xSprite : xSprite;
-                        int sy = isVFlip ? ySize - 1 - ySprite : ySprite;
-
-                        int color = getOBJPixelColor(vidBase, palBase, firstTileNumber,
-                            tileNumberIncrement, is256ColorPalette, paletteNumber, sx, sy);
-                        if (color != 0 && (objPixels[xScreen] == 0 || objPriority <= objPri[xScreen])) {
-                            objPixels[xScreen] = color;
-                            objPri[xScreen] = objPriority;
-                            objSemiTrans[xScreen] = isSemiTransparent;
-                        }
-                    }
-                }
-            } else {
-                // Affine sprite
-                boolean isDoubleSize = objMem.isDoubleSizeEnabled(objNumber);
-
-                int displayWidth = isDoubleSize ? xSize * 2 : xSize;
-                int displayHeight = isDoubleSize ? ySize * 2 : ySize;
-
-                int yC = yCoordinate;
-                if (yC >= YScreenSize) yC -= 256;
-
-                if (yScreen >= yC && yScreen < yC + displayHeight) {
-                    int groupNumber = objMem.getRotScalGroupNumber(objNumber);
-                    int pa = objMem.getPA(groupNumber);
-                    int pb = objMem.getPB(groupNumber);
-                    int pc = objMem.getPC(groupNumber);
-                    int pd = objMem.getPD(groupNumber);
-
-                    int halfW = xSize >> 1;
-                    int halfH = ySize >> 1;
-                    int iy = yScreen - yC - (displayHeight >> 1);
-
-                    for (int ix0 = 0; ix0 < displayWidth; ix0++) {
-                        int xScreen = xCoordinate + ix0;
-                        if (xScreen < 0 || xScreen >= XScreenSize) continue;
-
-                        int ix = ix0 - (displayWidth >> 1);
-                        int texX = ((pa * ix + pb * iy) >> 8) + halfW;
-                        int texY = ((pc * ix + pd * iy) >> 8) + halfH;
-
-                        if (texX >= 0 && texX < xSize && texY >= 0 && texY < ySize) {
-                            int color = getOBJPixelColor(vidBase, palBase, firstTileNumber,
-                                tileNumberIncrement, is256ColorPalette, paletteNumber, texX, texY);
-                            if (color != 0 && (objPixels[xScreen] == 0 || objPriority <= objPri[xScreen])) {
-                                objPixels[xScreen] = color;
-                                objPri[xScreen] = objPriority;
-                                objSemiTrans[xScreen] = isSemiTransparent;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private boolean isOBJPixelOpaque(int vidBase, int firstTileNumber, int tileNumberIncrement,
-                                     boolean is256ColorPalette, int x, int y) {
-        int xTile = x >>> 3, yTile = y >>> 3;
-        int tileX = x & 7, tileY = y & 7;
-
-        if (is256ColorPalette) {
-            int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + (xTile * 2);
-            if (iorMem.getVideoMode() >= 3 && tileNumber < 512) return false;
-            return ((vidMem.getByte(vidBase + (tileNumber * 32) + (tileY * 8) + tileX) & 0xFF) != 0);
+            ScanlineRenderer stripRenderer = stripRenderers[firstStrip];
+            int firstLine = pendingFirstLine + (pendingLineCount * firstStrip) / stripCount;
+            int lastLine = pendingFirstLine + (pendingLineCount * (firstStrip + 1)) / stripCount;
+            for (int y = firstLine; y < lastLine; y++) drawLine(stripRenderer, y, lineStates[y]);
         }
 
-        int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + xTile;
-        if (iorMem.getVideoMode() >= 3 && tileNumber < 512) return false;
-        int colorIndex = vidMem.getByte(vidBase + (tileNumber * 32) + (tileY * 4) + (tileX / 2)) & 0xFF;
-        if ((tileX & 1) != 0) colorIndex >>>= 4;
-        else colorIndex &= 0x0F;
-        return (colorIndex != 0);
-    }
-
-    private int getOBJPixelColor(int vidBase, int palBase, int firstTileNumber, int tileNumberIncrement,
-                                  boolean is256ColorPalette, int paletteNumber, int x, int y) {
-        int xTile = x >>> 3, yTile = y >>> 3;
-        int tileX = x & 7, tileY = y & 7;
-
-        if (is256ColorPalette) {
-            int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + (xTile * 2);
-            if (iorMem.getVideoMode() >= 3 && tileNumber < 512) return 0;
-            int colorIndex = vidMem.getByte(vidBase + (tileNumber * 32) + (tileY * 8) + tileX) & 0xFF;
-            if (colorIndex != 0) return toRGBA(palMem.getHalfWord(palBase + (colorIndex * 2)));
-        } else {
-            int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + xTile;
-            if (iorMem.getVideoMode() >= 3 && tileNumber < 512) return 0;
-            int colorIndex = vidMem.getByte(vidBase + (tileNumber * 32) + (tileY * 4) + (tileX / 2)) & 0xFF;
-            if ((tileX & 1) != 0) colorIndex >>>= 4; else colorIndex &= 0x0F;
-            if (colorIndex != 0) return toRGBA(palMem.getHalfWord(palBase + (((paletteNumber * 16) + colorIndex) * 2)));
-        }
-        return 0;
-    }
-
-    // ===== Color conversion =====
-
-    private static int toRGBA(short rgb15) {
-        int red   = (rgb15 & 0x001F) << 19;
-        int green = (rgb15 & 0x03E0) <<  6;
-        int blue  = (rgb15 & 0x7C00) >>> 7;
-        return 0xFF000000 | red | green | blue;
     }
 
 }
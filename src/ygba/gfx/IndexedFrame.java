@@ -0,0 +1,141 @@
+package ygba.gfx;
+
+/**
+ * Frame drawn by GFX before its colors are looked up: for each pixel, the
+ * color code of the top layer, the code of the layer below it (used by
+ * alpha blending) and a tag with the top layer and the color special
+ * effect, plus the effect coefficients of each line.
+ * A color code is a palette entry (0-255 BG colors, 256-511 OBJ colors),
+ * or Direct | RGB555 for the bitmaps of modes 3 and 5.
+ * GFX resolves the lines to ARGB with the palette they were drawn with,
+ * so a palette change (e.g. a fade) only costs a new resolve of the lines
+ * that did not change otherwise. Color effects are computed on the RGB555
+ * colors, as on the hardware, and only their result goes through the
+ * RGB555 to ARGB color table.
+ */
+public final class IndexedFrame {
+
+    public final static int Direct = 0x8000;
+
+    // Tags: layer in bits 0-2, effect in bits 3-4
+    public final static int
+            LayerMask = 0x07,
+            EffectShift = 3;
+
+    public final static int
+            NoEffect = 0,
+            AlphaBlending = 1,
+            BrightnessIncrease = 2,
+            BrightnessDecrease = 3;
+
+    private final static int
+            XScreenSize = GFX.XScreenSize,
+            YScreenSize = GFX.YScreenSize;
+
+    final short[] colors = new short[XScreenSize * YScreenSize];
+    final short[] secondColors = new short[XScreenSize * YScreenSize];
+    final byte[] tags = new byte[XScreenSize * YScreenSize];
+    final int[] eva = new int[YScreenSize];
+    final int[] evb = new int[YScreenSize];
+    final int[] evy = new int[YScreenSize];
+
+
+    IndexedFrame() {}
+
+    public short[] getColors() {
+        return colors;
+    }
+
+    public short[] getSecondColors() {
+        return secondColors;
+    }
+
+    public byte[] getTags() {
+        return tags;
+    }
+
+    public int getEVA(int y) {
+        return eva[y];
+    }
+
+    public int getEVB(int y) {
+        return evb[y];
+    }
+
+    public int getEVY(int y) {
+        return evy[y];
+    }
+
+    void setEffectCoefficients(int y, int lineEVA, int lineEVB, int lineEVY) {
+        eva[y] = lineEVA;
+        evb[y] = lineEVB;
+        evy[y] = lineEVY;
+    }
+
+    void clear() {
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = 0;
+            secondColors[i] = 0;
+            tags[i] = 0;
+        }
+    }
+
+    static int toARGB(int code, int[] palColors, int[] colorTable) {
+        return ((code & Direct) != 0) ? colorTable[code & 0x7FFF] : palColors[code & 0x01FF];
+    }
+
+    private static int toRGB15(int code, int[] palRGB15Colors) {
+        return ((code & Direct) != 0) ? (code & 0x7FFF) : palRGB15Colors[code & 0x01FF];
+    }
+
+    // Writes the ARGB colors of lines [firstLine, lastLine) to pixels, with
+    // the palette entries given as ARGB and RGB555 colors
+    void resolve(int firstLine, int lastLine, int[] pixels,
+                 int[] palColors, int[] palRGB15Colors, int[] colorTable) {
+        for (int y = firstLine; y < lastLine; y++) {
+            int lineEVA = eva[y], lineEVB = evb[y], lineEVY = evy[y];
+            int end = (y + 1) * XScreenSize;
+            for (int pixel = y * XScreenSize; pixel < end; pixel++) {
+                int code = colors[pixel];
+                switch (tags[pixel] >>> EffectShift) {
+                    case AlphaBlending:
+                        pixels[pixel] = colorTable[alphaBlend(toRGB15(code, palRGB15Colors),
+                                toRGB15(secondColors[pixel], palRGB15Colors), lineEVA, lineEVB)];
+                        break;
+                    case BrightnessIncrease:
+                        pixels[pixel] = colorTable[brighten(toRGB15(code, palRGB15Colors), lineEVY)];
+                        break;
+                    case BrightnessDecrease:
+                        pixels[pixel] = colorTable[darken(toRGB15(code, palRGB15Colors), lineEVY)];
+                        break;
+                    default:
+                        pixels[pixel] = toARGB(code, palColors, colorTable);
+                        break;
+                }
+            }
+        }
+    }
+
+    // The effects take and return RGB555 colors
+
+    private static int alphaBlend(int a, int b, int eva, int evb) {
+        int r = (((a & 0x1F) * eva) + ((b & 0x1F) * evb)) >> 4;
+        int g = ((((a >>> 5) & 0x1F) * eva) + (((b >>> 5) & 0x1F) * evb)) >> 4;
+        int bl = ((((a >>> 10) & 0x1F) * eva) + (((b >>> 10) & 0x1F) * evb)) >> 4;
+        if (r > 31) r = 31; if (g > 31) g = 31; if (bl > 31) bl = 31;
+        return r | (g << 5) | (bl << 10);
+    }
+
+    private static int brighten(int c, int evy) {
+        int r = c & 0x1F, g = (c >>> 5) & 0x1F, b = (c >>> 10) & 0x1F;
+        r += (31 - r) * evy >> 4; g += (31 - g) * evy >> 4; b += (31 - b) * evy >> 4;
+        return r | (g << 5) | (b << 10);
+    }
+
+    private static int darken(int c, int evy) {
+        int r = c & 0x1F, g = (c >>> 5) & 0x1F, b = (c >>> 10) & 0x1F;
+        r -= r * evy >> 4; g -= g * evy >> 4; b -= b * evy >> 4;
+        return r | (g << 5) | (b << 10);
+    }
+
+}
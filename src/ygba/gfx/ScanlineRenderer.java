@@ -0,0 +1,795 @@
+package ygba.gfx;
+
+import ygba.memory.Memory;
+import ygba.memory.PaletteMemory;
+import ygba.memory.TileCache;
+import ygba.memory.VideoMemory;
+import ygba.memory.VideoState;
+import ygba.memory.ObjectMemory;
+import ygba.memory.ObjectTable;
+
+/**
+ * Draws scanlines into the IndexedFrame of GFX, from a VideoState and the
+ * video and object memories. Each renderer has its own line buffers, so
+ * several of them can draw different lines of a frame at the same time.
+ * The line buffers hold color codes (see IndexedFrame) with the Opaque bit
+ * set, 0 being transparent.
+ */
+final class ScanlineRenderer {
+
+    private final static int
+            XScreenSize = GFX.XScreenSize,
+            YScreenSize = GFX.YScreenSize;
+
+    private final IndexedFrame frame;
+    private int[][] layerFrames;
+
+    // Per-layer scanline buffers (0 = transparent / not drawn)
+    private int[][] bgPixels = new int[4][XScreenSize];
+    private int[] objPixels = new int[XScreenSize];
+    private int[] objPri = new int[XScreenSize];
+    private boolean[] objSemiTrans = new boolean[XScreenSize];
+    private boolean[] objWindowMask = new boolean[XScreenSize];
+
+    // Spans of constant window flags (6 bits: BG0-3, OBJ, SFX) on the line
+    private int[] windowSpanEnds = new int[8];
+    private int[] windowSpanFlags = new int[8];
+    private int windowSpanCount;
+
+    // BGs of the line, sorted by priority then BG number
+    private int[] sortedLayers = new int[4];
+    private int sortedLayerCount;
+
+    // Start of the mosaic block of each screen coordinate, for block sizes 1 to 16
+    private static final int[][] MosaicTable = createMosaicTable();
+
+    private static final int LAYER_OBJ = 4;
+    private static final int LAYER_BD = 5;
+
+    // Window span flags of the outside area when the OBJ window decides per pixel
+    private static final int WIN_OUTSIDE_OBJ = -1;
+
+    // BGs displayed in each video mode
+    private static final int[] ModeBGMasks = { 0x0F, 0x07, 0x0C, 0x04, 0x04, 0x04 };
+    private static final int WIN_SFX_BIT = 0x20;
+
+    static final int Opaque = 0x10000;
+
+    // Opaque codes of the 512 palette entries
+    private static final int[] PaletteCodes = createPaletteCodes();
+
+    private VideoState video;
+    private final PaletteMemory palMem;
+    private final VideoMemory vidMem;
+    private final TileCache tileCache;
+    private final byte[] tiles4, tiles8;
+    private final ObjectTable objects;
+    private final BitmapFrames bitmapFrames;
+
+
+    ScanlineRenderer(Memory memory, IndexedFrame frame, BitmapFrames bitmapFrames) {
+        this.frame = frame;
+        this.bitmapFrames = bitmapFrames;
+        palMem = (PaletteMemory) memory.getBank(0x05);
+        vidMem = (VideoMemory) memory.getBank(0x06);
+        tileCache = vidMem.getTileCache();
+        tiles4 = tileCache.getTiles4();
+        tiles8 = tileCache.getTiles8();
+        objects = ((ObjectMemory) memory.getBank(0x07)).getObjectTable();
+    }
+
+    private static int[] createPaletteCodes() {
+        int[] codes = new int[0x200];
+        for (int i = 0; i < codes.length; i++) codes[i] = Opaque | i;
+        return codes;
+    }
+
+    private static int[][] createMosaicTable() {
+        int[][] table = new int[16][XScreenSize];
+        for (int size = 1; size <= 16; size++) {
+            for (int i = 0; i < XScreenSize; i++) table[size - 1][i] = i - (i % size);
+        }
+        return table;
+    }
+
+    void setLayerFrames(int[][] layerFrames) {
+        this.layerFrames = layerFrames;
+    }
+
+    // Draws line y (0-159) with the LCD registers decoded in video
+    void drawLine(int y, VideoState video) {
+        this.video = video;
+        switch (video.videoMode) {
+            case 0: drawMode0Line(y); break;
+            case 1: drawMode1Line(y); break;
+            case 2: drawMode2Line(y); break;
+            case 3: drawMode3Line(y); break;
+            case 4: drawMode4Line(y); break;
+            case 5: drawMode5Line(y); break;
+        }
+    }
+
+    // ===== Scanline buffer management =====
+
+    private void initScanlineBuffers(int yScreen) {
+        computeWindowSpans(yScreen);
+        for (int x = 0; x < XScreenSize; x++) {
+            bgPixels[0][x] = 0;
+            bgPixels[1][x] = 0;
+            bgPixels[2][x] = 0;
+            bgPixels[3][x] = 0;
+            objPixels[x] = 0;
+            objPri[x] = 4;
+            objSemiTrans[x] = false;
+        }
+    }
+
+    private static int clipWindowStart(int start, int max) {
+        return (start > max) ? max : start;
+    }
+
+    private static int clipWindowEnd(int start, int end, int max) {
+        // Hardware treats invalid ranges (end > max or start > end) as end=max.
+        if (end > max || start > end) return max;
+        return end;
+    }
+
+    // Splits the line into spans of constant window flags, WIN0 over WIN1
+    // over the OBJ window and outside area
+    private void computeWindowSpans(int yScreen) {
+        boolean win0Enabled = video.isWinEnabled[0];
+        boolean win1Enabled = video.isWinEnabled[1];
+        boolean objWinEnabled = video.isOBJWinEnabled;
+
+        windowSpanCount = 0;
+        if (!win0Enabled && !win1Enabled && !objWinEnabled) {
+            addWindowSpan(XScreenSize, 0x3F);
+            return;
+        }
+
+        int outsideFlags = video.winOutside;
+        if (objWinEnabled) {
+            drawOBJWindowMaskLine(yScreen);
+            outsideFlags = WIN_OUTSIDE_OBJ;
+        }
+
+        int left0 = XScreenSize, right0 = XScreenSize;
+        if (win0Enabled) {
+            int top = clipWindowStart(video.winTop[0], YScreenSize);
+            int bottom = clipWindowEnd(top, video.winBottom[0], YScreenSize);
+            if (yScreen >= top && yScreen < bottom) {
+                left0 = clipWindowStart(video.winLeft[0], XScreenSize);
+                right0 = clipWindowEnd(left0, video.winRight[0], XScreenSize);
+            }
+        }
+
+        int left1 = XScreenSize, right1 = XScreenSize;
+        if (win1Enabled) {
+            int top = clipWindowStart(video.winTop[1], YScreenSize);
+            int bottom = clipWindowEnd(top, video.winBottom[1], YScreenSize);
+            if (yScreen >= top && yScreen < bottom) {
+                left1 = clipWindowStart(video.winLeft[1], XScreenSize);
+                right1 = clipWindowEnd(left1, video.winRight[1], XScreenSize);
+            }
+        }
+
+        int x = 0;
+        while (x < XScreenSize) {
+            int end, flags;
+            if (x >= left0 && x < right0) {
+                end = right0;
+                flags = video.winInside[0];
+            } else if (x >= left1 && x < right1) {
+                end = (left0 > x && left0 < right1) ? left0 : right1;
+                flags = video.winInside[1];
+            } else {
+                end = XScreenSize;
+                if (left0 > x && left0 < end) end = left0;
+                if (left1 > x && left1 < end) end = left1;
+                flags = outsideFlags;
+            }
+            addWindowSpan(end, flags);
+            x = end;
+        }
+    }
+
+    private void addWindowSpan(int end, int flags) {
+        windowSpanEnds[windowSpanCount] = end;
+        windowSpanFlags[windowSpanCount] = flags;
+        windowSpanCount++;
+    }
+
+    // ===== Priority-sorted compositing (matches GBA hardware) =====
+
+    private void composeScanline(int yScreen) {
+        int lineOffset = yScreen * XScreenSize;
+        if (layerFrames != null) captureLayers(lineOffset);
+
+        sortLayers();
+        frame.setEffectCoefficients(yScreen, video.eva, video.evb, video.evy);
+
+        int x = 0;
+        for (int span = 0; span < windowSpanCount; span++) {
+            int end = windowSpanEnds[span];
+            int flags = windowSpanFlags[span];
+            if (flags == WIN_OUTSIDE_OBJ) {
+                int objWinFlags = video.winOBJ;
+                int outsideFlags = video.winOutside;
+                for (; x < end; x++) {
+                    composePixel(lineOffset + x, x, objWindowMask[x] ? objWinFlags : outsideFlags);
+                }
+            } else {
+                for (; x < end; x++) {
+                    composePixel(lineOffset + x, x, flags);
+                }
+            }
+        }
+    }
+
+    private void captureLayers(int lineOffset) {
+        for (int bg = 0; bg < 4; bg++) captureLayer(bgPixels[bg], layerFrames[bg], lineOffset);
+        captureLayer(objPixels, layerFrames[LAYER_OBJ], lineOffset);
+    }
+
+    private void captureLayer(int[] buf, int[] layerFrame, int lineOffset) {
+        int[] palColors = palMem.getColors();
+        int[] colorTable = palMem.getColorTable();
+        for (int x = 0; x < XScreenSize; x++) {
+            int code = buf[x];
+            layerFrame[lineOffset + x] = (code != 0) ? IndexedFrame.toARGB(code, palColors, colorTable) : 0;
+        }
+    }
+
+    private void sortLayers() {
+        int[] bgPri = video.priority;
+        int bgMask = ModeBGMasks[video.videoMode];
+        int count = 0;
+        for (int bg = 0; bg < 4; bg++) {
+            if ((bgMask & (1 << bg)) == 0 || !video.isBGEnabled[bg]) continue;
+            // BG0 has highest priority among BGs, BG3 lowest
+            int i = count++;
+            while (i > 0 && bgPri[sortedLayers[i - 1]] > bgPri[bg]) {
+                sortedLayers[i] = sortedLayers[i - 1];
+                i--;
+            }
+            sortedLayers[i] = bg;
+        }
+        sortedLayerCount = count;
+    }
+
+    private int getLayerCode(int layer, int x) {
+        switch (layer) {
+            case LAYER_OBJ: return objPixels[x];
+            case LAYER_BD: return PaletteCodes[0];
+            default: return bgPixels[layer][x];
+        }
+    }
+
+    private void composePixel(int pixel, int x, int wf) {
+        int[] bgPri = video.priority;
+
+        // Find top two non-transparent, window-visible layers by priority
+        int topLayer = LAYER_BD, botLayer = LAYER_BD;
+        boolean isOBJVisible = (objPixels[x] != 0 && (wf & 0x10) != 0);
+        int objPriority = objPri[x];
+        int i = 0;
+        while (botLayer == LAYER_BD) {
+            int layer;
+            // OBJ wins over BG at same priority
+            if (isOBJVisible && (i == sortedLayerCount || objPriority <= bgPri[sortedLayers[i]])) {
+                layer = LAYER_OBJ;
+                isOBJVisible = false;
+            } else if (i < sortedLayerCount) {
+                layer = sortedLayers[i++];
+                if (bgPixels[layer][x] == 0 || (wf & (1 << layer)) == 0) continue;
+            } else {
+                break;
+            }
+            if (topLayer == LAYER_BD) topLayer = layer;
+            else botLayer = layer;
+        }
+
+        // Select color special effects, applied when the frame is resolved
+        int effect = IndexedFrame.NoEffect;
+        int blendMode = video.blendMode;
+        boolean[] firstTarget = video.isFirstTarget;
+        boolean[] secondTarget = video.isSecondTarget;
+
+        if (topLayer == LAYER_OBJ && objSemiTrans[x] && secondTarget[botLayer]) {
+            // Semi-transparent OBJ: force alpha blend, ignores BLDCNT mode & window SFX bit
+            effect = IndexedFrame.AlphaBlending;
+        } else if (blendMode != 0 && (wf & WIN_SFX_BIT) != 0) {
+            if (blendMode == 1 && firstTarget[topLayer] && secondTarget[botLayer]) {
+                effect = IndexedFrame.AlphaBlending;
+            } else if (blendMode == 2 && firstTarget[topLayer]) {
+                effect = IndexedFrame.BrightnessIncrease;
+            } else if (blendMode == 3 && firstTarget[topLayer]) {
+                effect = IndexedFrame.BrightnessDecrease;
+            }
+        }
+
+        frame.colors[pixel] = (short) getLayerCode(topLayer, x);
+        frame.secondColors[pixel] = (short) getLayerCode(botLayer, x);
+        frame.tags[pixel] = (byte) (topLayer | (effect << IndexedFrame.EffectShift));
+    }
+
+    // ===== Mode draw methods =====
+
+    private void drawMode0Line(int yScreen) {
+        initScanlineBuffers(yScreen);
+        if (video.isBGEnabled[0]) drawBGTextModeLine(yScreen, 0);
+        if (video.isBGEnabled[1]) drawBGTextModeLine(yScreen, 1);
+        if (video.isBGEnabled[2]) drawBGTextModeLine(yScreen, 2);
+        if (video.isBGEnabled[3]) drawBGTextModeLine(yScreen, 3);
+        if (video.isOBJEnabled) drawOBJLine(yScreen);
+        composeScanline(yScreen);
+    }
+
+    private void drawMode1Line(int yScreen) {
+        initScanlineBuffers(yScreen);
+        if (video.isBGEnabled[0]) drawBGTextModeLine(yScreen, 0);
+        if (video.isBGEnabled[1]) drawBGTextModeLine(yScreen, 1);
+        if (video.isBGEnabled[2]) drawBGRotScalModeLine(yScreen, 2);
+        if (video.isOBJEnabled) drawOBJLine(yScreen);
+        composeScanline(yScreen);
+    }
+
+    private void drawMode2Line(int yScreen) {
+        initScanlineBuffers(yScreen);
+        if (video.isBGEnabled[2]) drawBGRotScalModeLine(yScreen, 2);
+        if (video.isBGEnabled[3]) drawBGRotScalModeLine(yScreen, 3);
+        if (video.isOBJEnabled) drawOBJLine(yScreen);
+        composeScanline(yScreen);
+    }
+
+    private void drawMode3Line(int yScreen) {
+        initScanlineBuffers(yScreen);
+        if (video.isBGEnabled[2]) drawBGBitmapModeLine(yScreen, BitmapFrames.Mode3, true);
+        if (video.isOBJEnabled) drawOBJLine(yScreen);
+        composeScanline(yScreen);
+    }
+
+    private void drawMode4Line(int yScreen) {
+        initScanlineBuffers(yScreen);
+        if (video.isBGEnabled[2]) {
+            drawBGBitmapModeLine(yScreen, BitmapFrames.getLayout(4, video.isFrame1Selected), true);
+        }
+        if (video.isOBJEnabled) drawOBJLine(yScreen);
+        composeScanline(yScreen);
+    }
+
+    private void drawMode5Line(int yScreen) {
+        initScanlineBuffers(yScreen);
+        if (video.isBGEnabled[2] && yScreen < 128) {
+            drawBGBitmapModeLine(yScreen, BitmapFrames.getLayout(5, video.isFrame1Selected), false);
+        }
+        if (video.isOBJEnabled) drawOBJLine(yScreen);
+        composeScanline(yScreen);
+    }
+
+    // ===== Background layer rendering =====
+
+    private void drawBGTextModeLine(int yScreen, int bgNumber) {
+        int characterBase = video.characterBaseAddress[bgNumber];
+        int screenBase = video.screenBaseAddress[bgNumber];
+
+        int xSize = video.textModeXSize[bgNumber];
+        int ySize = video.textModeYSize[bgNumber];
+        int xMask = xSize - 1;
+        int yMask = ySize - 1;
+
+        int xOffset = video.xOffset[bgNumber];
+        int yOffset = video.yOffset[bgNumber];
+
+        boolean is256ColorPalette = video.is256ColorPalette[bgNumber];
+        int screenBlocksPerRow = (xSize >>> 8); // 1 (256px) or 2 (512px)
+
+        boolean isMosaicEnabled = video.isMosaicEnabled[bgNumber];
+
+        int y = (isMosaicEnabled ? MosaicTable[video.bgMosaicYSize - 1][yScreen] : yScreen);
+        y = (y + yOffset) & yMask;
+        int localY = y & 0xFF;
+        int mapRowAddress = screenBase + ((y >>> 8) * screenBlocksPerRow * 0x0800) + ((localY >>> 3) * 64);
+        int tileRow = (localY & 0x07) * 8;
+
+        int[] buf = bgPixels[bgNumber];
+
+        // One map entry per tile, then the pixels of the tile on this line
+        int xScreen = 0;
+        while (xScreen < XScreenSize) {
+            int x = (xScreen + xOffset) & xMask;
+            int tileX = x & 0x07;
+            int count = Math.min(8 - tileX, XScreenSize - xScreen);
+
+            int tileData = vidMem.getHalfWord(mapRowAddress + ((x >>> 8) * 0x0800) + (((x & 0xFF) >>> 3) * 2));
+            int tileNumber = tileData & 0x03FF;
+            int tileFlip = (tileData >>> 10) & 0x03;
+
+            if (is256ColorPalette) {
+                int pixel = tileCache.getTile8(characterBase + (tileNumber * 64), tileFlip) + tileRow + tileX;
+                for (int i = 0; i < count; i++) {
+                    int colorIndex = tiles8[pixel + i] & 0xFF;
+                    if (colorIndex != 0) buf[xScreen + i] = PaletteCodes[colorIndex];
+                }
+            } else {
+                int pixel = tileCache.getTile4(characterBase + (tileNumber * 32), tileFlip) + tileRow + tileX;
+                int paletteBase = ((tileData >>> 12) & 0x0F) * 16;
+                for (int i = 0; i < count; i++) {
+                    int colorIndex = tiles4[pixel + i];
+                    if (colorIndex != 0) buf[xScreen + i] = PaletteCodes[paletteBase + colorIndex];
+                }
+            }
+
+            xScreen += count;
+        }
+
+        // Horizontal mosaic: each pixel repeats the first one of its block
+        if (isMosaicEnabled && (video.bgMosaicXSize > 1)) {
+            int[] xMosaic = MosaicTable[video.bgMosaicXSize - 1];
+            for (xScreen = 0; xScreen < XScreenSize; xScreen++) buf[xScreen] = buf[xMosaic[xScreen]];
+        }
+    }
+
+    private void drawBGRotScalModeLine(int yScreen, int bgNumber) {
+        int characterBase = video.characterBaseAddress[bgNumber];
+        int screenBase = video.screenBaseAddress[bgNumber];
+
+        int xySize = video.rotScalModeXYSize[bgNumber];
+        int xyMask = xySize - 1;
+
+        int xCoordinate = video.xCoordinate[bgNumber];
+        int yCoordinate = video.yCoordinate[bgNumber];
+
+        int pa = video.pa[bgNumber];
+        int pb = video.pb[bgNumber];
+        int pc = video.pc[bgNumber];
+        int pd = video.pd[bgNumber];
+
+        boolean wraparoundEnabled = video.isWraparoundOverflow[bgNumber];
+
+        int xCur = (yScreen * pb) + xCoordinate;
+        int yCur = (yScreen * pd) + yCoordinate;
+
+        int[] buf = bgPixels[bgNumber];
+
+        // Without wraparound, only the columns between where the line enters
+        // and leaves the map are drawn
+        int firstX = 0, lastX = XScreenSize;
+        if (!wraparoundEnabled) {
+            int limit = xySize << 8;
+            firstX = Math.max(getAffineEntry(xCur, pa, limit), getAffineEntry(yCur, pc, limit));
+            lastX = Math.min(getAffineExit(xCur, pa, limit), getAffineExit(yCur, pc, limit));
+            xCur += firstX * pa;
+            yCur += firstX * pc;
+        }
+
+        int mapRowSize = xySize >>> 3;
+        // The map entry and tile are looked up again only when the line
+        // moves to another tile
+        int lastTile = -1;
+        int tileOffset = 0;
+
+        if (pc == 0) {
+            // No rotation: the whole line reads the same map row
+            int y = (yCur >> 8) & (wraparoundEnabled ? xyMask : -1);
+            int mapRow = (y >>> 3) * mapRowSize;
+            int tileRow = (y & 7) * 8;
+
+            for (int xScreen = firstX; xScreen < lastX; xScreen++) {
+                int x = (xCur >> 8) & (wraparoundEnabled ? xyMask : -1);
+
+                int tile = mapRow + (x >>> 3);
+                if (tile != lastTile) {
+                    int tileNumber = vidMem.getByte(screenBase + tile) & 0xFF;
+                    tileOffset = tileCache.getTile8(characterBase + (tileNumber * 64), 0) + tileRow;
+                    lastTile = tile;
+                }
+                int colorIndex = tiles8[tileOffset + (x & 7)] & 0xFF;
+                if (colorIndex != 0) {
+                    buf[xScreen] = PaletteCodes[colorIndex];
+                }
+
+                xCur += pa;
+            }
+            return;
+        }
+
+        for (int xScreen = firstX; xScreen < lastX; xScreen++) {
+            int x = xCur >> 8;
+            int y = yCur >> 8;
+
+            if (wraparoundEnabled) { x &= xyMask; y &= xyMask; }
+
+            int tile = ((y >>> 3) * mapRowSize) + (x >>> 3);
+            if (tile != lastTile) {
+                int tileNumber = vidMem.getByte(screenBase + tile) & 0xFF;
+                tileOffset = tileCache.getTile8(characterBase + (tileNumber * 64), 0);
+                lastTile = tile;
+            }
+            int colorIndex = tiles8[tileOffset + ((y & 7) * 8) + (x & 7)] & 0xFF;
+            if (colorIndex != 0) {
+                buf[xScreen] = PaletteCodes[colorIndex];
+            }
+
+            xCur += pa;
+            yCur += pc;
+        }
+    }
+
+    // First column where start + column * step, a fixed point map coordinate,
+    // is within [0, limit) (XScreenSize if it never is)
+    private static int getAffineEntry(int start, int step, int limit) {
+        if (start >= 0 && start < limit) return 0;
+        if (step == 0) return XScreenSize;
+        if (step > 0) return (start < 0) ? Math.min(ceilDiv(-start, step), XScreenSize) : XScreenSize;
+        return (start >= limit) ? Math.min(ceilDiv(start - limit + 1, -step), XScreenSize) : XScreenSize;
+    }
+
+    // First column after the entry where the coordinate is out of [0, limit)
+    // again (XScreenSize if it stays in)
+    private static int getAffineExit(int start, int step, int limit) {
+        if (step == 0) return (start >= 0 && start < limit) ? XScreenSize : 0;
+        if (step > 0) return (start < limit) ? Math.min(((limit - 1 - start) / step) + 1, XScreenSize) : 0;
+        return (start >= 0) ? Math.min((start / -step) + 1, XScreenSize) : 0;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    // Copies the converted row of a bitmap (160 pixels wide in mode 5) to BG2
+    private void drawBGBitmapModeLine(int yScreen, int layout, boolean isMosaicSupported) {
+        boolean isMosaicEnabled = isMosaicSupported && video.isMosaicEnabled[2];
+        int y = (isMosaicEnabled ? MosaicTable[video.bgMosaicYSize - 1][yScreen] : yScreen);
+        int[] frame = bitmapFrames.getFrame(layout, y);
+        int rowOffset = y * XScreenSize;
+        int width = (layout >= BitmapFrames.Mode5) ? 160 : XScreenSize;
+
+        int[] buf = bgPixels[2];
+        if (isMosaicEnabled && video.bgMosaicXSize > 1) {
+            int[] xMosaic = MosaicTable[video.bgMosaicXSize - 1];
+            for (int xScreen = 0; xScreen < width; xScreen++) buf[xScreen] = frame[rowOffset + xMosaic[xScreen]];
+        } else {
+            System.arraycopy(frame, rowOffset, buf, 0, width);
+        }
+    }
+
+    // ===== OBJ (sprite) rendering =====
+
+    private void drawOBJWindowMaskLine(int yScreen) {
+        for (int x = 0; x < XScreenSize; x++) objWindowMask[x] = false;
+
+        int vidBase = 0x00010000;
+        boolean is1DMapping = video.isOBJ1DMapping;
+
+        objects.update();
+        int[] lineObjects = objects.lineWindowObjects[yScreen];
+        int lineObjectCount = objects.lineWindowObjectCounts[yScreen];
+
+        for (int i = 0; i < lineObjectCount; i++) {
+            int objNumber = lineObjects[i];
+
+            int xSize = objects.xSize[objNumber];
+            int ySize = objects.ySize[objNumber];
+            int xCoordinate = objects.xCoordinate[objNumber];
+            int yC = objects.yCoordinate[objNumber];
+
+            boolean is256ColorPalette = objects.is256ColorPalette[objNumber];
+            int xTiles = xSize >>> 3;
+
+            int firstTileNumber = objects.tileNumber[objNumber];
+            int tileNumberIncrement;
+            if (is1DMapping) {
+                tileNumberIncrement = (is256ColorPalette ? xTiles * 2 : xTiles);
+            } else {
+                tileNumberIncrement = 32;
+                if (is256ColorPalette) firstTileNumber &= 0xFFFE;
+            }
+
+            if (!objects.isRotScalEnabled[objNumber]) {
+                boolean isHFlip = objects.isHFlipEnabled[objNumber];
+                boolean isVFlip = objects.isVFlipEnabled[objNumber];
+                int tileFlip = (isHFlip ? TileCache.HFlip : 0) | (isVFlip ? TileCache.VFlip : 0);
+                int ySprite = yScreen - yC;
+                int yTile = (isVFlip ? ySize - 1 - ySprite : ySprite) >>> 3;
+                int tileRow = (ySprite & 0x07) * 8;
+
+                // One flipped tile per run of 8 pixels, as for the text BGs
+                int xSprite = Math.max(0, -xCoordinate);
+                int xEnd = Math.min(xSize, XScreenSize - xCoordinate);
+                while (xSprite < xEnd) {
+                    int tileX = xSprite & 0x07;
+                    int count = Math.min(8 - tileX, xEnd - xSprite);
+                    int xTile = (isHFlip ? xSize - 1 - xSprite : xSprite) >>> 3;
+                    int xScreen = xCoordinate + xSprite;
+
+                    int tileNumber = firstTileNumber + (yTile * tileNumberIncrement)
+                            + (is256ColorPalette ? xTile * 2 : xTile);
+                    if (video.videoMode < 3 || tileNumber >= 512) {
+                        byte[] tiles = is256ColorPalette ? tiles8 : tiles4;
+                        int pixel = (is256ColorPalette
+                                ? tileCache.getTile8(vidBase + (tileNumber * 32), tileFlip)
+                                : tileCache.getTile4(vidBase + (tileNumber * 32), tileFlip)) + tileRow + tileX;
+                        for (int j = 0; j < count; j++) {
+                            if (tiles[pixel + j] != 0) objWindowMask[xScreen + j] = true;
+                        }
+                    }
+
+                    xSprite += count;
+                }
+            } else {
+                int displayWidth = objects.displayWidth[objNumber];
+                int displayHeight = objects.displayHeight[objNumber];
+
+                int groupNumber = objects.rotScalGroupNumber[objNumber];
+                int pa = objects.pa[groupNumber];
+                int pb = objects.pb[groupNumber];
+                int pc = objects.pc[groupNumber];
+                int pd = objects.pd[groupNumber];
+
+                int halfW = xSize >> 1;
+                int halfH = ySize >> 1;
+                int iy = yScreen - yC - (displayHeight >> 1);
+
+                for (int ix0 = 0; ix0 < displayWidth; ix0++) {
+                    int xScreen = xCoordinate + ix0;
+                    if (xScreen < 0 || xScreen >= XScreenSize) continue;
+
+                    int ix = ix0 - (displayWidth >> 1);
+                    int texX = ((pa * ix + pb * iy) >> 8) + halfW;
+                    int texY = ((pc * ix + pd * iy) >> 8) + halfH;
+
+                    if (texX >= 0 && texX < xSize && texY >= 0 && texY < ySize &&
+                            isOBJPixelOpaque(vidBase, firstTileNumber, tileNumberIncrement,
+                                is256ColorPalette, texX, texY)) {
+                        objWindowMask[xScreen] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void drawOBJLine(int yScreen) {
+        int vidBase = 0x00010000;
+        int palBase = 0x100; // OBJ colors follow the 256 BG colors
+        boolean is1DMapping = video.isOBJ1DMapping;
+
+        objects.update();
+        int[] lineObjects = objects.lineObjects[yScreen];
+        int lineObjectCount = objects.lineObjectCounts[yScreen];
+
+        // The list runs 127→0 so lower OBJ numbers overwrite higher (at same priority)
+        for (int i = 0; i < lineObjectCount; i++) {
+            int objNumber = lineObjects[i];
+
+            int xSize = objects.xSize[objNumber];
+            int ySize = objects.ySize[objNumber];
+            int xCoordinate = objects.xCoordinate[objNumber];
+            int yC = objects.yCoordinate[objNumber];
+
+            boolean is256ColorPalette = objects.is256ColorPalette[objNumber];
+            int paletteNumber = objects.paletteNumber[objNumber];
+            int xTiles = xSize >>> 3;
+
+            int firstTileNumber = objects.tileNumber[objNumber];
+            int tileNumberIncrement;
+            if (is1DMapping) {
+                tileNumberIncrement = (is256ColorPalette ? xTiles * 2 : xTiles);
+            } else {
+                tileNumberIncrement = 32;
+                if (is256ColorPalette) firstTileNumber &= 0xFFFE;
+            }
+
+            int objPriority = objects.priority[objNumber];
+            boolean isSemiTransparent = (objects.mode[objNumber] == ObjectTable.SemiTransparentMode);
+
+            if (!objects.isRotScalEnabled[objNumber]) {
+                boolean isHFlip = objects.isHFlipEnabled[objNumber];
+                boolean isVFlip = objects.isVFlipEnabled[objNumber];
+                int tileFlip = (isHFlip ? TileCache.HFlip : 0) | (isVFlip ? TileCache.VFlip : 0);
+                int ySprite = yScreen - yC;
+                int yTile = (isVFlip ? ySize - 1 - ySprite : ySprite) >>> 3;
+                int tileRow = (ySprite & 0x07) * 8;
+
+                // One flipped tile per run of 8 pixels, as for the text BGs
+                int xSprite = Math.max(0, -xCoordinate);
+                int xEnd = Math.min(xSize, XScreenSize - xCoordinate);
+                while (xSprite < xEnd) {
+                    int tileX = xSprite & 0x07;
+                    int count = Math.min(8 - tileX, xEnd - xSprite);
+                    int xTile = (isHFlip ? xSize - 1 - xSprite : xSprite) >>> 3;
+                    int xScreen = xCoordinate + xSprite;
+
+                    int tileNumber = firstTileNumber + (yTile * tileNumberIncrement)
+                            + (is256ColorPalette ? xTile * 2 : xTile);
+                    if (video.videoMode < 3 || tileNumber >= 512) {
+                        byte[] tiles = is256ColorPalette ? tiles8 : tiles4;
+                        int paletteBase = is256ColorPalette ? palBase : palBase + (paletteNumber * 16);
+                        int pixel = (is256ColorPalette
+                                ? tileCache.getTile8(vidBase + (tileNumber * 32), tileFlip)
+                                : tileCache.getTile4(vidBase + (tileNumber * 32), tileFlip)) + tileRow + tileX;
+                        for (int j = 0; j < count; j++, xScreen++) {
+                            int colorIndex = tiles[pixel + j] & 0xFF;
+                            if (colorIndex != 0 && (objPixels[xScreen] == 0 || objPriority <= objPri[xScreen])) {
+                                objPixels[xScreen] = PaletteCodes[paletteBase + colorIndex];
+                                objPri[xScreen] = objPriority;
+                                objSemiTrans[xScreen] = isSemiTransparent;
+                            }
+                        }
+                    }
+
+                    xSprite += count;
+                }
+            } else {
+                // Affine sprite
+                int displayWidth = objects.displayWidth[objNumber];
+                int displayHeight = objects.displayHeight[objNumber];
+
+                int groupNumber = objects.rotScalGroupNumber[objNumber];
+                int pa = objects.pa[groupNumber];
+                int pb = objects.pb[groupNumber];
+                int pc = objects.pc[groupNumber];
+                int pd = objects.pd[groupNumber];
+
+                int halfW = xSize >> 1;
+                int halfH = ySize >> 1;
+                int iy = yScreen - yC - (displayHeight >> 1);
+
+                for (int ix0 = 0; ix0 < displayWidth; ix0++) {
+                    int xScreen = xCoordinate + ix0;
+                    if (xScreen < 0 || xScreen >= XScreenSize) continue;
+
+                    int ix = ix0 - (displayWidth >> 1);
+                    int texX = ((pa * ix + pb * iy) >> 8) + halfW;
+                    int texY = ((pc * ix + pd * iy) >> 8) + halfH;
+
+                    if (texX >= 0 && texX < xSize && texY >= 0 && texY < ySize) {
+                        int color = getOBJPixelColor(vidBase, palBase, firstTileNumber,
+                            tileNumberIncrement, is256ColorPalette, paletteNumber, texX, texY);
+                        if (color != 0 && (objPixels[xScreen] == 0 || objPriority <= objPri[xScreen])) {
+                            objPixels[xScreen] = color;
+                            objPri[xScreen] = objPriority;
+                            objSemiTrans[xScreen] = isSemiTransparent;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isOBJPixelOpaque(int vidBase, int firstTileNumber, int tileNumberIncrement,
+                                     boolean is256ColorPalette, int x, int y) {
+        int xTile = x >>> 3, yTile = y >>> 3;
+        int tileX = x & 7, tileY = y & 7;
+
+        if (is256ColorPalette) {
+            int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + (xTile * 2);
+            if (video.videoMode >= 3 && tileNumber < 512) return false;
+            return (tiles8[tileCache.getTile8(vidBase + (tileNumber * 32), 0) + (tileY * 8) + tileX] != 0);
+        }
+
+        int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + xTile;
+        if (video.videoMode >= 3 && tileNumber < 512) return false;
+        return (tiles4[tileCache.getTile4(vidBase + (tileNumber * 32), 0) + (tileY * 8) + tileX] != 0);
+    }
+
+    private int getOBJPixelColor(int vidBase, int palBase, int firstTileNumber, int tileNumberIncrement,
+                                  boolean is256ColorPalette, int paletteNumber, int x, int y) {
+        int xTile = x >>> 3, yTile = y >>> 3;
+        int tileX = x & 7, tileY = y & 7;
+
+        if (is256ColorPalette) {
+            int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + (xTile * 2);
+            if (video.videoMode >= 3 && tileNumber < 512) return 0;
+            int colorIndex = tiles8[tileCache.getTile8(vidBase + (tileNumber * 32), 0) + (tileY * 8) + tileX] & 0xFF;
+            if (colorIndex != 0) return PaletteCodes[palBase + colorIndex];
+        } else {
+            int tileNumber = firstTileNumber + (yTile * tileNumberIncrement) + xTile;
+            if (video.videoMode >= 3 && tileNumber < 512) return 0;
+            int colorIndex = tiles4[tileCache.getTile4(vidBase + (tileNumber * 32), 0) + (tileY * 8) + tileX];
+            if (colorIndex != 0) return PaletteCodes[palBase + (paletteNumber * 16) + colorIndex];
+        }
+        return 0;
+    }
+
+}
@@ -1,20 +1,83 @@
 package ygba.memory;
 
+import java.nio.ByteBuffer;
+
 public final class GamePakMemory
         extends MemoryManager_8_16_32 {
     
+    // The ROM is mirrored every power of two above its size; the bytes
+    // between the end of the image and the next mirror read as zero
+    private int imageSize;
+    
     
     public GamePakMemory(int partNumber) {
         super("Game Pak ROM Part" + partNumber, 0x0);
     }
     
     
-    protected byte[] createSpace(int s) {
+    private static int getMirrorSize(int s) {
         int i = 1;
         while (i < s) i <<= 1;
-        return super.createSpace(i);
+        return i;
+    }
+    
+    protected byte[] createSpace(int s) {
+        byte[] space = super.createSpace(getMirrorSize(s));
+        imageSize = size;
+        return space;
+    }
+    
+    void mapImage(ByteBuffer image) {
+        mapImage(image, getMirrorSize(image.limit()));
+        imageSize = image.limit();
+    }
+    
+    
+    public byte getByte(int offset) {
+        return loadByte(offset);
+    }
+    
+    public short getHalfWord(int offset) {
+        offset = getInternalOffset(offset);
+        if (offset + 2 <= imageSize) return buffer.getShort(offset);
+        return (short) ((loadByte(offset) & 0x00FF) | (loadByte(offset + 1) << 8));
+    }
+    
+    public int getWord(int offset) {
+        offset = getInternalOffset(offset);
+        if (offset + 4 <= imageSize) return buffer.getInt(offset);
+        return ((getHalfWord(offset) & 0x0000FFFF) | (getHalfWord(offset + 2) << 16));
+    }
+    
+    public byte loadByte(int offset) {
+        offset = getInternalOffset(offset);
+        return (offset < imageSize) ? buffer.get(offset) : 0;
+    }
+    
+    public short loadHalfWord(int offset) {
+        return getHalfWord(offset & 0xFFFFFFFE);
+    }
+    
+    public int loadWord(int offset) {
+        return getWord(offset & 0xFFFFFFFC);
     }
     
+    public void setByte(int offset, byte value) {
+        if (isSharedImage()) handleAccessViolation(offset);
+        else super.setByte(offset, value);
+    }
+    
+    public void setHalfWord(int offset, short value) {
+        if (isSharedImage()) handleAccessViolation(offset);
+        else super.setHalfWord(offset, value);
+    }
+    
+    public void setWord(int offset, int value) {
+        if (isSharedImage()) handleAccessViolation(offset);
+        else super.setWord(offset, value);
+    }
+    
+    
     public void storeByte(int offset, byte value) {
         handleAccessViolation(offset);
     }
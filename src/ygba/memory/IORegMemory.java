@@ -1,5 +1,6 @@
 package ygba.memory;
 
+import ygba.cpu.ARM7TDMI;
 import ygba.dma.DirectMemoryAccess;
 import ygba.dma.DMA;
 import ygba.gfx.GFX;
@@ -95,13 +96,22 @@ public final class IORegMemory
             REG_HALTCNT = 0x0300; // Power-down control
     
     private short keyInput;
+    private boolean interruptPending;
     private final boolean traceVideoRegs;
     private final boolean traceVideoAllWrites;
     private final int[] traceVideoLastValues;
     
+    private ARM7TDMI cpu;
     private DMA dma0, dma1, dma2, dma3;
     private GFX gfx;
     private Timer timer0, timer1, timer2, timer3;
+    private int timerReadCount;
+    
+    // Handlers of the registers with side effects, one per halfword
+    private final RegisterReader[] registerReaders;
+    private final RegisterWriter[] registerWriters;
+    
+    private final VideoState videoState;
     
     
     public IORegMemory() {
@@ -110,6 +120,22 @@ public final class IORegMemory
         traceVideoAllWrites = Boolean.getBoolean("ygba.trace.video.all-writes");
         traceVideoLastValues = new int[12];
         Arrays.fill(traceVideoLastValues, -1);
+        registerReaders = new RegisterReader[0x200];
+        registerWriters = new RegisterWriter[0x200];
+        mapInterruptRegisters();
+        mapVideoRegisters();
+        videoState = new VideoState();
+        updateVideoState();
+    }
+    
+    void connectToCPU(ARM7TDMI cpu) {
+        this.cpu = cpu;
+        
+        // Power-down control: HALTCNT is the upper byte, POSTFLG the lower one
+        registerWriters[REG_HALTCNT >>> 1] = value -> {
+            setByte(REG_HALTCNT, (byte) value);
+            cpu.halt();
+        };
     }
     
     void connectToDMA(DirectMemoryAccess dma) {
@@ -117,6 +143,11 @@ public final class IORegMemory
         this.dma1 = dma.getDMA(1);
         this.dma2 = dma.getDMA(2);
         this.dma3 = dma.getDMA(3);
+        
+        mapDMARegisters(dma0, REG_DMA0SAD);
+        mapDMARegisters(dma1, REG_DMA1SAD);
+        mapDMARegisters(dma2, REG_DMA2SAD);
+        mapDMARegisters(dma3, REG_DMA3SAD);
     }
     
     void connectToGraphics(GFX gfx) {
@@ -128,68 +159,119 @@ public final class IORegMemory
         timer1 = time.getTimer(1);
         timer2 = time.getTimer(2);
         timer3 = time.getTimer(3);
+        
+        mapTimerRegisters(timer0, REG_TM0D);
+        mapTimerRegisters(timer1, REG_TM1D);
+        mapTimerRegisters(timer2, REG_TM2D);
+        mapTimerRegisters(timer3, REG_TM3D);
     }
     
     
-    public byte loadByte(int offset) {
-        offset = getInternalOffset(offset);
-        int offset16 = offset & 0xFFFFFFFE; // Halfword aligned offset
+    // ----- Register handlers
+    // A halfword register without a reader is plain storage and is read
+    // straight from space. A reader refreshes space from the device that
+    // owns the register. A writer replaces the plain store.
+    
+    private interface RegisterReader {
+        short read();
+    }
+    
+    private interface RegisterWriter {
+        void write(short value);
+    }
+    
+    private void mapRegister(final int offset, RegisterReader reader, final RegisterWriter writer) {
+        registerReaders[offset >>> 1] = reader;
+        registerWriters[offset >>> 1] = value -> {
+            writer.write(value);
+            store(offset, value);
+        };
+    }
+    
+    private void mapDMARegisters(DMA dma, int base) {
+        mapRegister(base,      dma::getSourceLRegister,      dma::setSourceLRegister);
+        mapRegister(base + 2,  dma::getSourceHRegister,      dma::setSourceHRegister);
+        mapRegister(base + 4,  dma::getDestinationLRegister, dma::setDestinationLRegister);
+        mapRegister(base + 6,  dma::getDestinationHRegister, dma::setDestinationHRegister);
+        mapRegister(base + 8,  dma::getCountRegister,        dma::setCountRegister);
+        mapRegister(base + 10, dma::getControlRegister,      dma::setControlRegister);
+    }
+    
+    private void mapTimerRegisters(final Timer timer, int base) {
+        mapRegister(base, () -> {
+            timerReadCount++;
+            return timer.getTime();
+        }, timer::setTime);
+        mapRegister(base + 2, null, timer::updateState);
+    }
+    
+    private void mapInterruptRegisters() {
+        RegisterWriter ignore = value -> {};
+        registerWriters[REG_VCOUNT >>> 1] = ignore;
+        registerWriters[REG_P1 >>> 1] = ignore;
         
-        switch (offset16) {
-            // DMA0
-            case REG_DMA0SAD:   setHalfWord(offset16, dma0.getSourceLRegister()); break;
-            case REG_DMA0SAD+2: setHalfWord(offset16, dma0.getSourceHRegister()); break;
-            case REG_DMA0DAD:   setHalfWord(offset16, dma0.getDestinationLRegister()); break;
-            case REG_DMA0DAD+2: setHalfWord(offset16, dma0.getDestinationHRegister()); break;
-            case REG_DMA0CNT_L: setHalfWord(offset16, dma0.getCountRegister()); break;
-            case REG_DMA0CNT_H: setHalfWord(offset16, dma0.getControlRegister()); break;
-            
-            // DMA1
-            case REG_DMA1SAD:   setHalfWord(offset16, dma1.getSourceLRegister()); break;
-            case REG_DMA1SAD+2: setHalfWord(offset16, dma1.getSourceHRegister()); break;
-            case REG_DMA1DAD:   setHalfWord(offset16, dma1.getDestinationLRegister()); break;
-            case REG_DMA1DAD+2: setHalfWord(offset16, dma1.getDestinationHRegister()); break;
-            case REG_DMA1CNT_L: setHalfWord(offset16, dma1.getCountRegister()); break;
-            case REG_DMA1CNT_H: setHalfWord(offset16, dma1.getControlRegister()); break;
-            
-            // DMA2
-            case REG_DMA2SAD:   setHalfWord(offset16, dma2.getSourceLRegister()); break;
-            case REG_DMA2SAD+2: setHalfWord(offset16, dma2.getSourceHRegister()); break;
-            case REG_DMA2DAD:   setHalfWord(offset16, dma2.getDestinationLRegister()); break;
-            case REG_DMA2DAD+2: setHalfWord(offset16, dma2.getDestinationHRegister()); break;
-            case REG_DMA2CNT_L: setHalfWord(offset16, dma2.getCountRegister()); break;
-            case REG_DMA2CNT_H: setHalfWord(offset16, dma2.getControlRegister()); break;
-            
-            // DMA3
-            case REG_DMA3SAD:   setHalfWord(offset16, dma3.getSourceLRegister()); break;
-            case REG_DMA3SAD+2: setHalfWord(offset16, dma3.getSourceHRegister()); break;
-            case REG_DMA3DAD:   setHalfWord(offset16, dma3.getDestinationLRegister()); break;
-            case REG_DMA3DAD+2: setHalfWord(offset16, dma3.getDestinationHRegister()); break;
-            case REG_DMA3CNT_L: setHalfWord(offset16, dma3.getCountRegister()); break;
-            case REG_DMA3CNT_H: setHalfWord(offset16, dma3.getControlRegister()); break;
-            
-            // Timers
-            case REG_TM0D: setHalfWord(offset16, timer0.getTime()); break;
-            case REG_TM1D: setHalfWord(offset16, timer1.getTime()); break;
-            case REG_TM2D: setHalfWord(offset16, timer2.getTime()); break;
-            case REG_TM3D: setHalfWord(offset16, timer3.getTime()); break;
-        }
+        registerWriters[REG_IE >>> 1] = value -> {
+            setHalfWord(REG_IE, value);
+            updateInterruptPending();
+        };
+        registerWriters[REG_IME >>> 1] = value -> {
+            setHalfWord(REG_IME, value);
+            updateInterruptPending();
+        };
         
+        // Writing 1 to a bit of IF acknowledges the interrupt
+        registerWriters[REG_IF >>> 1] = value -> {
+            setHalfWord(REG_IF, (short) (getHalfWord(REG_IF) & ~value));
+            updateInterruptPending();
+        };
+    }
+    
+    private void mapVideoRegisters() {
+        for (int offset = REG_DISPCNT; offset <= REG_COLY; offset += 2) {
+            if ((offset == REG_DISPSTAT) || (offset == REG_VCOUNT)) continue;
+            final int offset16 = offset;
+            registerWriters[offset16 >>> 1] = value -> {
+                store(offset16, value);
+                updateVideoState(offset16);
+            };
+        }
+    }
+    
+    private static boolean isDMARegister(int offset16) {
+        return ((offset16 >= REG_DMA0SAD) && (offset16 <= REG_DMA3CNT_H));
+    }
+    
+    private void store(int offset16, short value) {
+        buffer.putShort(offset16, value);
+        markDirty(offset16);
+        if (traceVideoRegs) traceVideoRegisterWrite(offset16);
+    }
+    
+    
+    public byte loadByte(int offset) {
+        offset = getInternalOffset(offset);
+        RegisterReader reader = registerReaders[offset >>> 1];
+        if (reader != null) setHalfWord(offset & 0xFFFFFFFE, reader.read());
         return space[offset];
     }
     
     public short loadHalfWord(int offset) {
-        offset &= 0xFFFFFFFE;
-        return (short) ((loadByte(offset) & 0x00FF) |
-                        (loadByte(offset + 1) << 8));
+        offset = getInternalOffset(offset) & 0xFFFFFFFE;
+        RegisterReader reader = registerReaders[offset >>> 1];
+        if (reader == null) return buffer.getShort(offset);
+        short value = reader.read();
+        setHalfWord(offset, value);
+        return value;
     }
     
     public int loadWord(int offset) {
-        offset &= 0xFFFFFFFC;
-        return (((loadByte(offset) & 0x000000FF)) |
-                ((loadByte(offset + 1) & 0x000000FF) << 8) |
-                ((loadByte(offset + 2) & 0x000000FF) << 16) |
-                ((loadByte(offset + 3)) << 24));
+        offset = getInternalOffset(offset) & 0xFFFFFFFC;
+        int index = offset >>> 1;
+        RegisterReader reader = registerReaders[index];
+        if (reader != null) setHalfWord(offset, reader.read());
+        reader = registerReaders[index + 1];
+        if (reader != null) setHalfWord(offset + 2, reader.read());
+        return buffer.getInt(offset);
     }
     
     private static short getValue16(boolean isOffsetAligned, short oldValue, byte newValue) {
@@ -200,159 +282,58 @@ public final class IORegMemory
         offset = getInternalOffset(offset);
         int offset16 = offset & 0xFFFFFFFE;
         boolean isOffsetAligned = ((offset & 0x00000001) == 0);
-        short value16 = getValue16(isOffsetAligned, getHalfWord(offset16), value);
+        RegisterWriter writer = registerWriters[offset16 >>> 1];
+        
+        if (writer == null) {
+            setByte(offset, value);
+            if (traceVideoRegs && !isOffsetAligned) traceVideoRegisterWrite(offset16);
+            return;
+        }
         
         switch (offset16) {
-            // VCOUNT
-            case REG_VCOUNT:
-                return;
-                
-            // DMA0
-            case REG_DMA0SAD:   dma0.setSourceLRegister(value16); break;
-            case REG_DMA0SAD+2: dma0.setSourceHRegister(value16); break;
-            case REG_DMA0DAD:   dma0.setDestinationLRegister(value16); break;
-            case REG_DMA0DAD+2: dma0.setDestinationHRegister(value16); break;
-            case REG_DMA0CNT_L: dma0.setCountRegister(value16); break;
-            case REG_DMA0CNT_H: dma0.setControlRegister(value16); break;
-            
-            // DMA1
-            case REG_DMA1SAD:   dma1.setSourceLRegister(value16); break;
-            case REG_DMA1SAD+2: dma1.setSourceHRegister(value16); break;
-            case REG_DMA1DAD:   dma1.setDestinationLRegister(value16); break;
-            case REG_DMA1DAD+2: dma1.setDestinationHRegister(value16); break;
-            case REG_DMA1CNT_L: dma1.setCountRegister(value16); break;
-            case REG_DMA1CNT_H: dma1.setControlRegister(value16); break;
-            
-            // DMA2
-            case REG_DMA2SAD:   dma2.setSourceLRegister(value16); break;
-            case REG_DMA2SAD+2: dma2.setSourceHRegister(value16); break;
-            case REG_DMA2DAD:   dma2.setDestinationLRegister(value16); break;
-            case REG_DMA2DAD+2: dma2.setDestinationHRegister(value16); break;
-            case REG_DMA2CNT_L: dma2.setCountRegister(value16); break;
-            case REG_DMA2CNT_H: dma2.setControlRegister(value16); break;
-            
-            // DMA3
-            case REG_DMA3SAD:
-                value16 = getValue16(isOffsetAligned, dma3.getSourceLRegister(), value);
-                dma3.setSourceLRegister(value16);
-                break;
-            case REG_DMA3SAD+2:
-                value16 = getValue16(isOffsetAligned, dma3.getSourceHRegister(), value);
-                dma3.setSourceHRegister(value16);
-                break;
-            case REG_DMA3DAD:
-                value16 = getValue16(isOffsetAligned, dma3.getDestinationLRegister(), value);
-                dma3.setDestinationLRegister(value16);
-                break;
-            case REG_DMA3DAD+2:
-                value16 = getValue16(isOffsetAligned, dma3.getDestinationHRegister(), value);
-                dma3.setDestinationHRegister(value16);
-                break;
-            case REG_DMA3CNT_L:
-                value16 = getValue16(isOffsetAligned, dma3.getCountRegister(), value);
-                dma3.setCountRegister(value16);
-                break;
-            case REG_DMA3CNT_H:
-                value16 = getValue16(isOffsetAligned, dma3.getControlRegister(), value);
-                dma3.setControlRegister(value16);
-                break;
-            
-            // Timers
-            case REG_TM0D:   timer0.setTime(value16); break;
-            case REG_TM0CNT: timer0.updateState(value16); break;
-            case REG_TM1D:   timer1.setTime(value16); break;
-            case REG_TM1CNT: timer1.updateState(value16); break;
-            case REG_TM2D:   timer2.setTime(value16); break;
-            case REG_TM2CNT: timer2.updateState(value16); break;
-            case REG_TM3D:   timer3.setTime(value16); break;
-            case REG_TM3CNT: timer3.updateState(value16); break;
-            
-            // Keypad
-            case REG_P1:
+            // Only the interrupts of the written byte are acknowledged
+            case REG_IF:
+                writer.write((short) (isOffsetAligned ? (value & 0x00FF) : (value << 8)));
                 return;
             
-            // Interrupts
-            case REG_IF:
-                space[offset] &= ~value;
+            // Power-down control: HALTCNT is the upper byte
+            case REG_HALTCNT:
+                if (isOffsetAligned) setByte(offset, value);
+                else cpu.halt();
                 return;
         }
         
-        space[offset] = value;
-        if (traceVideoRegs && !isOffsetAligned) traceVideoRegisterWrite(offset16);
+        // The other byte of a DMA register is the one held by the channel
+        short oldValue = isDMARegister(offset16) ? registerReaders[offset16 >>> 1].read() : getHalfWord(offset16);
+        writer.write(getValue16(isOffsetAligned, oldValue, value));
     }
     
     public void storeHalfWord(int offset, short value) {
         offset = getInternalOffset(offset) & 0xFFFFFFFE;
-
-        switch (offset) {
-            // VCOUNT
-            case REG_VCOUNT:
-                return;
-
-            // DMA0
-            case REG_DMA0SAD:   dma0.setSourceLRegister(value); break;
-            case REG_DMA0SAD+2: dma0.setSourceHRegister(value); break;
-            case REG_DMA0DAD:   dma0.setDestinationLRegister(value); break;
-            case REG_DMA0DAD+2: dma0.setDestinationHRegister(value); break;
-            case REG_DMA0CNT_L: dma0.setCountRegister(value); break;
-            case REG_DMA0CNT_H: dma0.setControlRegister(value); break;
-
-            // DMA1
-            case REG_DMA1SAD:   dma1.setSourceLRegister(value); break;
-            case REG_DMA1SAD+2: dma1.setSourceHRegister(value); break;
-            case REG_DMA1DAD:   dma1.setDestinationLRegister(value); break;
-            case REG_DMA1DAD+2: dma1.setDestinationHRegister(value); break;
-            case REG_DMA1CNT_L: dma1.setCountRegister(value); break;
-            case REG_DMA1CNT_H: dma1.setControlRegister(value); break;
-
-            // DMA2
-            case REG_DMA2SAD:   dma2.setSourceLRegister(value); break;
-            case REG_DMA2SAD+2: dma2.setSourceHRegister(value); break;
-            case REG_DMA2DAD:   dma2.setDestinationLRegister(value); break;
-            case REG_DMA2DAD+2: dma2.setDestinationHRegister(value); break;
-            case REG_DMA2CNT_L: dma2.setCountRegister(value); break;
-            case REG_DMA2CNT_H: dma2.setControlRegister(value); break;
-
-            // DMA3
-            case REG_DMA3SAD:   dma3.setSourceLRegister(value); break;
-            case REG_DMA3SAD+2: dma3.setSourceHRegister(value); break;
-            case REG_DMA3DAD:   dma3.setDestinationLRegister(value); break;
-            case REG_DMA3DAD+2: dma3.setDestinationHRegister(value); break;
-            case REG_DMA3CNT_L: dma3.setCountRegister(value); break;
-            case REG_DMA3CNT_H: dma3.setControlRegister(value); break;
-
-            // Timers
-            case REG_TM0D:   timer0.setTime(value); break;
-            case REG_TM0CNT: timer0.updateState(value); break;
-            case REG_TM1D:   timer1.setTime(value); break;
-            case REG_TM1CNT: timer1.updateState(value); break;
-            case REG_TM2D:   timer2.setTime(value); break;
-            case REG_TM2CNT: timer2.updateState(value); break;
-            case REG_TM3D:   timer3.setTime(value); break;
-            case REG_TM3CNT: timer3.updateState(value); break;
-
-            // Keypad
-            case REG_P1:
-                return;
-
-            // Interrupts
-            case REG_IF:
-                setHalfWord(REG_IF, (short) (getHalfWord(REG_IF) & ~value));
-                return;
-        }
-
-        setHalfWord(offset, value);
-        if (traceVideoRegs) traceVideoRegisterWrite(offset);
+        RegisterWriter writer = registerWriters[offset >>> 1];
+        if (writer == null) store(offset, value);
+        else writer.write(value);
     }
     
     public void storeWord(int offset, int value) {
-        offset &= 0xFFFFFFFC;
+        offset = getInternalOffset(offset) & 0xFFFFFFFC;
+        int index = offset >>> 1;
+        if ((registerWriters[index] == null) && (registerWriters[index + 1] == null)) {
+            buffer.putInt(offset, value);
+            markDirty(offset);
+            if (traceVideoRegs) {
+                traceVideoRegisterWrite(offset);
+                traceVideoRegisterWrite(offset + 2);
+            }
+            return;
+        }
         storeHalfWord(offset, (short) value);
         storeHalfWord(offset + 2, (short) (value >>> 16));
     }
     
     public void softReset() {
         hardReset();
+        updateInterruptPending();
         setHalfWord(REG_DISPCNT, (short) 0x0080);
         setHalfWord(REG_BG2PA, (short) 0x0100);
         setHalfWord(REG_BG2PD, (short) 0x0100);
@@ -360,6 +341,7 @@ public final class IORegMemory
         setHalfWord(REG_BG3PD, (short) 0x0100);
         setHalfWord(REG_P1, (short) 0x03FF);
         keyInput = 0x03FF;
+        updateVideoState();
     }
     
     
@@ -701,6 +683,128 @@ public final class IORegMemory
         return (getByte(REG_WINOUT + 1) & 0x3F);
     }
 
+    // ----- Decoded video state
+    
+    public VideoState getVideoState() {
+        return videoState;
+    }
+    
+    // Decodes every register again, after a reset cleared them
+    void updateVideoState() {
+        for (int offset16 = REG_DISPCNT; offset16 <= REG_COLY; offset16 += 2) updateVideoState(offset16);
+    }
+    
+    // Called after the halfword register at offset16 was written
+    private void updateVideoState(int offset16) {
+        switch (offset16) {
+            case REG_DISPCNT: updateVideoDISPCNT(); break;
+            
+            case REG_BG0CNT: updateVideoBGCNT(0); break;
+            case REG_BG1CNT: updateVideoBGCNT(1); break;
+            case REG_BG2CNT: updateVideoBGCNT(2); break;
+            case REG_BG3CNT: updateVideoBGCNT(3); break;
+            
+            case REG_BG0HOFS: videoState.xOffset[0] = getXOffset(0); break;
+            case REG_BG0VOFS: videoState.yOffset[0] = getYOffset(0); break;
+            case REG_BG1HOFS: videoState.xOffset[1] = getXOffset(1); break;
+            case REG_BG1VOFS: videoState.yOffset[1] = getYOffset(1); break;
+            case REG_BG2HOFS: videoState.xOffset[2] = getXOffset(2); break;
+            case REG_BG2VOFS: videoState.yOffset[2] = getYOffset(2); break;
+            case REG_BG3HOFS: videoState.xOffset[3] = getXOffset(3); break;
+            case REG_BG3VOFS: videoState.yOffset[3] = getYOffset(3); break;
+            
+            case REG_BG2PA: videoState.pa[2] = getPA(2); break;
+            case REG_BG2PB: videoState.pb[2] = getPB(2); break;
+            case REG_BG2PC: videoState.pc[2] = getPC(2); break;
+            case REG_BG2PD: videoState.pd[2] = getPD(2); break;
+            case REG_BG2X:
+            case REG_BG2X + 2: videoState.xCoordinate[2] = getXCoordinate(2); break;
+            case REG_BG2Y:
+            case REG_BG2Y + 2: videoState.yCoordinate[2] = getYCoordinate(2); break;
+            case REG_BG3PA: videoState.pa[3] = getPA(3); break;
+            case REG_BG3PB: videoState.pb[3] = getPB(3); break;
+            case REG_BG3PC: videoState.pc[3] = getPC(3); break;
+            case REG_BG3PD: videoState.pd[3] = getPD(3); break;
+            case REG_BG3X:
+            case REG_BG3X + 2: videoState.xCoordinate[3] = getXCoordinate(3); break;
+            case REG_BG3Y:
+            case REG_BG3Y + 2: videoState.yCoordinate[3] = getYCoordinate(3); break;
+            
+            case REG_WIN0H:
+                videoState.winLeft[0] = getWin0Left();
+                videoState.winRight[0] = getWin0Right();
+                break;
+            case REG_WIN1H:
+                videoState.winLeft[1] = getWin1Left();
+                videoState.winRight[1] = getWin1Right();
+                break;
+            case REG_WIN0V:
+                videoState.winTop[0] = getWin0Top();
+                videoState.winBottom[0] = getWin0Bottom();
+                break;
+            case REG_WIN1V:
+                videoState.winTop[1] = getWin1Top();
+                videoState.winBottom[1] = getWin1Bottom();
+                break;
+            case REG_WININ:
+                videoState.winInside[0] = getWinInside(0);
+                videoState.winInside[1] = getWinInside(1);
+                break;
+            case REG_WINOUT:
+                videoState.winOutside = getWinOutside();
+                videoState.winOBJ = getWinOBJ();
+                break;
+            
+            case REG_MOSAIC:
+                videoState.bgMosaicXSize = getBGMosaicXSize();
+                videoState.bgMosaicYSize = getBGMosaicYSize();
+                videoState.objMosaicXSize = getOBJMosaicXSize();
+                videoState.objMosaicYSize = getOBJMosaicYSize();
+                break;
+            
+            case REG_BLDMOD:
+                videoState.blendMode = getBlendMode();
+                for (int layer = 0; layer < 5; layer++) {
+                    videoState.isFirstTarget[layer] = isFirstTarget(layer);
+                    videoState.isSecondTarget[layer] = isSecondTarget(layer);
+                }
+                videoState.isFirstTarget[5] = isFirstTargetBD();
+                videoState.isSecondTarget[5] = isSecondTargetBD();
+                break;
+            case REG_COLEV:
+                videoState.eva = getEVA();
+                videoState.evb = getEVB();
+                break;
+            case REG_COLY:
+                videoState.evy = getEVY();
+                break;
+        }
+    }
+            
+    private void updateVideoDISPCNT() {
+        videoState.videoMode = getVideoMode();
+        videoState.isFrame1Selected = isFrame1Selected();
+        videoState.isOBJ1DMapping = isOBJ1DMapping();
+        videoState.isForcedBlank = isForcedBlank();
+        videoState.isOBJEnabled = isOBJEnabled();
+        videoState.isOBJWinEnabled = isOBJWinEnabled();
+        for (int bgNumber = 0; bgNumber < 4; bgNumber++) videoState.isBGEnabled[bgNumber] = isBGEnabled(bgNumber);
+        for (int winNumber = 0; winNumber < 2; winNumber++) videoState.isWinEnabled[winNumber] = isWinEnabled(winNumber);
+    }
+    
+    private void updateVideoBGCNT(int bgNumber) {
+        videoState.priority[bgNumber] = getPriority(bgNumber);
+        videoState.characterBaseAddress[bgNumber] = getCharacterBaseAddress(bgNumber);
+        videoState.screenBaseAddress[bgNumber] = getScreenBaseAddress(bgNumber);
+        videoState.isMosaicEnabled[bgNumber] = isMosaicEnabled(bgNumber);
+        videoState.is256ColorPalette[bgNumber] = is256ColorPalette(bgNumber);
+        videoState.isWraparoundOverflow[bgNumber] = isWraparoundOverflow(bgNumber);
+        videoState.textModeXSize[bgNumber] = getTextModeXSize(bgNumber);
+        videoState.textModeYSize[bgNumber] = getTextModeYSize(bgNumber);
+        videoState.rotScalModeXYSize[bgNumber] = getRotScalModeXYSize(bgNumber);
+    }
+    
+
     private void traceVideoRegisterWrite(int offset16) {
         String regName;
         int regIndex;
@@ -768,6 +872,27 @@ public final class IORegMemory
     
     public void generateInterrupt(short interruptBit) {
         setHalfWord(REG_IF, (short) (getHalfWord(REG_IF) | interruptBit));
+        updateInterruptPending();
+    }
+    
+    // IME && (IE & IF), recomputed only when one of the three registers changes
+    public boolean isInterruptPending() {
+        return interruptPending;
+    }
+    
+    // Timer counters change between events: the idle loop detector must
+    // know whether a loop polls one
+    public int getTimerReadCount() {
+        return timerReadCount;
+    }
+    
+    // IE & IF, regardless of IME: what wakes up a halted CPU
+    public boolean isInterruptRequested() {
+        return ((getHalfWord(REG_IE) & getHalfWord(REG_IF)) != 0);
+    }
+    
+    void updateInterruptPending() {
+        interruptPending = isInterruptMasterEnabled() && ((getHalfWord(REG_IE) & getHalfWord(REG_IF)) != 0);
     }
     
     
@@ -1,5 +1,7 @@
 package ygba.memory;
 
+import ygba.cpu.ARM7TDMI;
+import ygba.cpu.BlockCache;
 import ygba.dma.DirectMemoryAccess;
 import ygba.gfx.GFX;
 import ygba.time.Time;
@@ -8,6 +10,9 @@ import ygba.util.MemoryWriteWatch;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.zip.*;
 
 public final class Memory
@@ -17,11 +22,29 @@ public final class Memory
             MemoryBankMask = 0x0F000000,
             MemoryAddressMask = 0x00FFFFFF;
     
+    // 4KB pages over the 28-bit address space. A page backed by a plain
+    // array is read (and, for work RAM, written) directly; the others go
+    // through their bank, which handles I/O registers, save memory, the
+    // byte-store quirks of video memory and mirrors smaller than a page
+    private final static int
+            PageShift = 12,
+            PageSize = 1 << PageShift,
+            PageMask = PageSize - 1,
+            PagesPerBank = 0x01000000 >>> PageShift,
+            PageIndexMask = (0x10 * PagesPerBank) - 1;
+    
+    private final ByteBuffer[] readPages, writePages;
+    private final int[] readPageBases, writePageBases;
+    // Owners of the write pages, whose dirty pages the fast path marks
+    private final MemoryManager[] writePageBanks;
+    
     private MemoryInterface[] bank;
     
     private SystemMemory sysMem;
     private GamePakMemory gp1Mem, gp2Mem;
     
+    private BlockCache blockCache;
+    
     private boolean isBIOSLoaded, isROMLoaded;
 
     private String loadedBIOSSource, loadedROMSource;
@@ -29,6 +52,10 @@ public final class Memory
     private long loadedBIOSCRC32, loadedROMCRC32;
     
     private long fileSize;
+    private long fileCRC32;
+    
+    // Kept here so that the shared images stay registered while loaded
+    private SharedImage biosImage, romImage;
     
     
     public Memory() {
@@ -52,6 +79,13 @@ public final class Memory
 
         ((VideoMemory) bank[0x06]).connectToIORegMemory((IORegMemory) bank[0x04]);
         
+        readPages = new ByteBuffer[PageIndexMask + 1];
+        writePages = new ByteBuffer[PageIndexMask + 1];
+        readPageBases = new int[PageIndexMask + 1];
+        writePageBases = new int[PageIndexMask + 1];
+        writePageBanks = new MemoryManager[PageIndexMask + 1];
+        mapPages();
+        
         isBIOSLoaded = isROMLoaded = false;
 
         loadedBIOSSource = loadedROMSource = null;
@@ -62,18 +96,29 @@ public final class Memory
     }
     
     
+    public void connectToCPU(ARM7TDMI cpu) {
+        getIORegMemory().connectToCPU(cpu);
+    }
+    
     public void connectToDMA(DirectMemoryAccess dma) {
         getIORegMemory().connectToDMA(dma);
     }
     
     public void connectToGraphics(GFX gfx) {
         getIORegMemory().connectToGraphics(gfx);
+        ((PaletteMemory) bank[0x05]).connectToGraphics(gfx);
+        ((VideoMemory) bank[0x06]).connectToGraphics(gfx);
+        ((ObjectMemory) bank[0x07]).connectToGraphics(gfx);
     }
     
     public void connectToTime(Time time) {
         getIORegMemory().connectToTime(time);
     }
     
+    public void connectToBlockCache(BlockCache blockCache) {
+        this.blockCache = blockCache;
+    }
+    
     
     public MemoryInterface getBank(int bankNumber) {
         return bank[bankNumber & 0x0F];
@@ -95,6 +140,45 @@ public final class Memory
         return ((MemoryManager) getBank(bankNumber)).getSize();
     }
     
+    // 64-bit hash of a memory range, recomputed only for the pages written
+    // since the previous call; the range is clipped to the end of its bank
+    public long getHash64(int offset, int length) {
+        return ((MemoryManager) bank[(offset & MemoryBankMask) >>> 24]).getHash64(offset, length);
+    }
+    
+    private void mapPages() {
+        Arrays.fill(readPages, null);
+        Arrays.fill(writePages, null);
+        Arrays.fill(writePageBanks, null);
+        mapBank(0x00, false);
+        mapBank(0x02, true);
+        mapBank(0x03, true);
+        mapBank(0x05, false);
+        mapBank(0x06, false);
+        mapBank(0x07, false);
+        for (int bankNumber = 0x08; bankNumber <= 0x0D; bankNumber++) {
+            mapBank(bankNumber, false);
+        }
+    }
+    
+    private void mapBank(int bankNumber, boolean isWritable) {
+        MemoryManager memoryManager = (MemoryManager) bank[bankNumber];
+        if (memoryManager.getSize() < PageSize) return;
+        ByteBuffer buffer = memoryManager.getBuffer();
+        for (int i = 0; i < PagesPerBank; i++) {
+            int page = (bankNumber * PagesPerBank) + i;
+            int base = memoryManager.getInternalOffset(page << PageShift);
+            if (base + PageSize > buffer.limit()) continue; // Past the end of a ROM image
+            readPages[page] = buffer;
+            readPageBases[page] = base;
+            if (isWritable) {
+                writePages[page] = buffer;
+                writePageBases[page] = base;
+                writePageBanks[page] = memoryManager;
+            }
+        }
+    }
+    
     public String getDescription(int bankNumber) {
         String address = Hex.toAddrString(bankNumber << 24, Hex.Word);
         MemoryManager b = (MemoryManager) bank[bankNumber];
@@ -106,57 +190,99 @@ public final class Memory
     
     
     public byte getByte(int offset) {
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = readPages[page];
+        if (buffer != null) return buffer.get(readPageBases[page] + (offset & PageMask));
         return bank[(offset & MemoryBankMask) >>> 24].getByte(offset);
     }
     
     public short getHalfWord(int offset) {
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = readPages[page];
+        if (buffer != null) return buffer.getShort(readPageBases[page] + (offset & PageMask & 0xFFFFFFFE));
         return bank[(offset & MemoryBankMask) >>> 24].getHalfWord(offset);
     }
     
     public int getWord(int offset) {
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = readPages[page];
+        if (buffer != null) return buffer.getInt(readPageBases[page] + (offset & PageMask & 0xFFFFFFFC));
         return bank[(offset & MemoryBankMask) >>> 24].getWord(offset);
     }
     
     
     public void setByte(int offset, byte value) {
         bank[(offset & MemoryBankMask) >>> 24].setByte(offset, value);
+        if (blockCache != null) blockCache.invalidate(offset);
     }
     
     public void setHalfWord(int offset, short value) {
         bank[(offset & MemoryBankMask) >>> 24].setHalfWord(offset, value);
+        if (blockCache != null) blockCache.invalidate(offset);
     }
     
     public void setWord(int offset, int value) {
         bank[(offset & MemoryBankMask) >>> 24].setWord(offset, value);
+        if (blockCache != null) blockCache.invalidate(offset);
     }
     
     
     public byte loadByte(int offset) {
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = readPages[page];
+        if (buffer != null) return buffer.get(readPageBases[page] + (offset & PageMask));
         return bank[(offset & MemoryBankMask) >>> 24].loadByte(offset);
     }
     
     public short loadHalfWord(int offset) {
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = readPages[page];
+        if (buffer != null) return buffer.getShort(readPageBases[page] + (offset & PageMask & 0xFFFFFFFE));
         return bank[(offset & MemoryBankMask) >>> 24].loadHalfWord(offset);
     }
     
     public int loadWord(int offset) {
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = readPages[page];
+        if (buffer != null) return buffer.getInt(readPageBases[page] + (offset & PageMask & 0xFFFFFFFC));
         return bank[(offset & MemoryBankMask) >>> 24].loadWord(offset);
     }
     
     
     public void storeByte(int offset, byte value) {
         MemoryWriteWatch.logWrite(offset, 1, value & 0xFF);
-        bank[(offset & MemoryBankMask) >>> 24].storeByte(offset, value);
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = writePages[page];
+        if (buffer != null) {
+            int index = writePageBases[page] + (offset & PageMask);
+            buffer.put(index, value);
+            writePageBanks[page].markDirty(index);
+        } else bank[(offset & MemoryBankMask) >>> 24].storeByte(offset, value);
+        if (blockCache != null) blockCache.invalidate(offset);
     }
     
     public void storeHalfWord(int offset, short value) {
         MemoryWriteWatch.logWrite(offset, 2, value & 0xFFFF);
-        bank[(offset & MemoryBankMask) >>> 24].storeHalfWord(offset, value);
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = writePages[page];
+        if (buffer != null) {
+            int index = writePageBases[page] + (offset & PageMask & 0xFFFFFFFE);
+            buffer.putShort(index, value);
+            writePageBanks[page].markDirty(index);
+        } else bank[(offset & MemoryBankMask) >>> 24].storeHalfWord(offset, value);
+        if (blockCache != null) blockCache.invalidate(offset);
     }
     
     public void storeWord(int offset, int value) {
         MemoryWriteWatch.logWrite(offset, 4, value);
-        bank[(offset & MemoryBankMask) >>> 24].storeWord(offset, value);
+        int page = (offset >>> PageShift) & PageIndexMask;
+        ByteBuffer buffer = writePages[page];
+        if (buffer != null) {
+            int index = writePageBases[page] + (offset & PageMask & 0xFFFFFFFC);
+            buffer.putInt(index, value);
+            writePageBanks[page].markDirty(index);
+        } else bank[(offset & MemoryBankMask) >>> 24].storeWord(offset, value);
+        if (blockCache != null) blockCache.invalidate(offset);
     }
     
     
@@ -164,12 +290,20 @@ public final class Memory
         for (int i = 0; i < bank.length; i++) {
             ((MemoryManager) bank[i]).softReset();
         }
+        clearBlockCache();
     }
     
     public void hardReset() {
         for (int i = 0; i < bank.length; i++) {
             ((MemoryManager) bank[i]).hardReset();
         }
+        getIORegMemory().updateInterruptPending();
+        getIORegMemory().updateVideoState();
+        clearBlockCache();
+    }
+    
+    private void clearBlockCache() {
+        if (blockCache != null) blockCache.clear();
     }
     
     public void reset() {
@@ -190,6 +324,7 @@ public final class Memory
         InputStream fileInputStream = fileURLConnection.getInputStream();
         
         String fileName = fileURL.getFile();
+        fileCRC32 = -1;
         
         if (fileName.toLowerCase().endsWith(".zip")) {
             ZipInputStream zipInputStream = new ZipInputStream(fileInputStream);
@@ -199,6 +334,7 @@ public final class Memory
                     fileName = zipEntry.getName();
                     if (isGBAFile(fileName)) {
                         fileSize = zipEntry.getSize();
+                        fileCRC32 = zipEntry.getCrc();
                         return zipInputStream;
                     }
                 }
@@ -224,10 +360,41 @@ public final class Memory
         } while ((bytesRead != -1) && (size > 0));
     }
 
-    private static long computeCRC32(byte[] data, int len) {
-        CRC32 crc32 = new CRC32();
-        crc32.update(data, 0, len);
-        return crc32.getValue();
+    private File getLocalFile(URL fileURL) {
+        if (!"file".equalsIgnoreCase(fileURL.getProtocol())) return null;
+        File file;
+        try {
+            file = new File(fileURL.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            file = new File(fileURL.getPath());
+        }
+        return (isGBAFile(file.getName()) && file.isFile()) ? file : null;
+    }
+    
+    // Maps a local uncompressed file; any other file is read (and inflated)
+    // once into a heap buffer, unless an instance already shares its content
+    private SharedImage loadImage(URL fileURL) throws IOException {
+        File file = getLocalFile(fileURL);
+        if (file != null) {
+            try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+                fileSize = channel.size();
+                return SharedImage.share(channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize));
+            }
+        }
+        
+        InputStream stream = openFile(fileURL);
+        if (stream == null) throw new IOException("Not a GBA file");
+        try {
+            if (fileCRC32 != -1) {
+                SharedImage image = SharedImage.find(fileCRC32, (int) fileSize);
+                if (image != null) return image;
+            }
+            byte[] data = new byte[(int) fileSize];
+            readStream(stream, data);
+            return SharedImage.share(ByteBuffer.wrap(data));
+        } finally {
+            stream.close();
+        }
     }
     
     
@@ -235,20 +402,22 @@ public final class Memory
     
     public boolean loadBIOS(URL biosFileURL) {
         try {
-            InputStream biosStream = openFile(biosFileURL);
+            SharedImage image = loadImage(biosFileURL);
             
-            int biosFileSize = (int) fileSize;
+            int biosFileSize = image.getSize();
             if (biosFileSize != (16 * 1024)) { // GBA BIOS size = 16KB
                 throw new IOException("Wrong BIOS size");
             }
             
-            readStream(biosStream, sysMem.getSpace());
-            biosStream.close();
+            sysMem.mapImage(image.getView(0, biosFileSize), biosFileSize);
+            biosImage = image;
+            mapPages();
             
+            clearBlockCache();
             isBIOSLoaded = true;
             loadedBIOSSource = biosFileURL.toString();
             loadedBIOSSize = biosFileSize;
-            loadedBIOSCRC32 = computeCRC32(sysMem.getSpace(), biosFileSize);
+            loadedBIOSCRC32 = image.getCRC32();
         } catch (IOException e) {
             System.out.println("Failed loading BIOS file: " + e.getMessage());
             unloadBIOS();
@@ -258,7 +427,10 @@ public final class Memory
     }
     
     public void unloadBIOS() {
-        sysMem.hardReset();
+        sysMem.createSpace(0x4000);
+        biosImage = null;
+        mapPages();
+        clearBlockCache();
         fileSize = 0;
         isBIOSLoaded = false;
         loadedBIOSSource = null;
@@ -271,9 +443,9 @@ public final class Memory
     
     public boolean loadROM(URL romFileURL) {
         try {
-            InputStream romStream = openFile(romFileURL);
+            SharedImage image = loadImage(romFileURL);
             
-            int romFileSize = (int) fileSize;
+            int romFileSize = image.getSize();
             int rom1Size, rom2Size;
             if (romFileSize <= 0x01000000) {
                 rom1Size =  romFileSize;
@@ -285,20 +457,16 @@ public final class Memory
                 throw new IOException("Invalid ROM size");
             }
             
-            byte[] rom1 = gp1Mem.createSpace(rom1Size);
-            byte[] rom2 = gp2Mem.createSpace(rom2Size);
-            readStream(romStream, rom1);
-            readStream(romStream, rom2);
-            romStream.close();
+            gp1Mem.mapImage(image.getView(0, rom1Size));
+            gp2Mem.mapImage(image.getView(rom1Size, rom2Size));
+            romImage = image;
+            mapPages();
             
+            clearBlockCache();
             isROMLoaded = true;
             loadedROMSource = romFileURL.toString();
             loadedROMSize = romFileSize;
-
-            CRC32 crc32 = new CRC32();
-            if (rom1Size > 0) crc32.update(rom1, 0, rom1Size);
-            if (rom2Size > 0) crc32.update(rom2, 0, rom2Size);
-            loadedROMCRC32 = crc32.getValue();
+            loadedROMCRC32 = image.getCRC32();
         } catch (IOException e) {
             System.out.println("Failed loading ROM file: " + e.getMessage());
             unloadROM();
@@ -310,6 +478,9 @@ public final class Memory
     public void unloadROM() {
         gp1Mem.createSpace(0x0);
         gp2Mem.createSpace(0x0);
+        romImage = null;
+        mapPages();
+        clearBlockCache();
         fileSize = 0;
         isROMLoaded = false;
         loadedROMSource = null;
@@ -2,6 +2,9 @@ package ygba.memory;
 
 import ygba.util.Hex;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 abstract class MemoryManager
         implements MemoryInterface {
     
@@ -12,6 +15,21 @@ abstract class MemoryManager
     int mask;
     
     byte[] space;
+    // Little-endian view of space: halfwords and words in a single access
+    ByteBuffer buffer;
+    // Copy of a shared image handed out by getSpace(), made on first use
+    private byte[] imageCopy;
+    
+    // Pages written since the last sync of the dirty maps, one bit each. The
+    // store paths only set a bit here; syncDirtyPages() moves the bits to
+    // changedPages (queried and cleared by clients) and to staleHashPages
+    // (pages whose cached hash must be computed again)
+    long[] dirtyPages;
+    private long[] changedPages;
+    private long[] staleHashPages;
+    private long[] pageHashes;
+    // Pages written, one bitmap for each client of createDirtyPageSet()
+    private long[][] dirtyPageSets = new long[0][];
     
     
     public MemoryManager(String name, int size) {
@@ -21,13 +39,45 @@ abstract class MemoryManager
     
     private final static int MinMemSize = 0x4;
     
+    public final static int
+            DirtyPageShift = 8,
+            DirtyPageSize = 1 << DirtyPageShift;
+    
     protected byte[] createSpace(int s) {
         size = (s < MinMemSize) ? MinMemSize : s;
         mask = size - 1;
         space = new byte[size];
+        buffer = ByteBuffer.wrap(space).order(ByteOrder.LITTLE_ENDIAN);
+        imageCopy = null;
+        createDirtyPages();
         return space;
     }
     
+    // Uses a read-only image shared with other instances instead of a
+    // private array: space is then null and the set methods must not be
+    // used on the bank (see isSharedImage())
+    protected final void mapImage(ByteBuffer image, int s) {
+        size = (s < MinMemSize) ? MinMemSize : s;
+        mask = size - 1;
+        space = null;
+        buffer = image;
+        imageCopy = null;
+        createDirtyPages();
+    }
+    
+    final boolean isSharedImage() {
+        return (space == null);
+    }
+    
+    private void createDirtyPages() {
+        int words = (getPageCount() + 63) >>> 6;
+        dirtyPages = new long[words];
+        changedPages = new long[words];
+        staleHashPages = new long[words];
+        pageHashes = null;
+        markAllDirty();
+    }
+    
     public final String getName() {
         return name;
     }
@@ -36,55 +86,185 @@ abstract class MemoryManager
         return size;
     }
     
+    // Contents of the bank, for dumps and CRCs. A bank mapped on a shared
+    // image returns a copy of it (zero past the end of the image), made
+    // once: writing into that array does not change the bank.
     public final byte[] getSpace() {
-        return space;
+        if (space != null) return space;
+        if (imageCopy == null) {
+            byte[] copy = new byte[size];
+            ByteBuffer image = buffer.duplicate();
+            image.clear();
+            image.get(copy, 0, Math.min(image.remaining(), size));
+            imageCopy = copy;
+        }
+        return imageCopy;
     }
     
     public final byte[] getBytes() {
         return getSpace();
     }
     
+    public final ByteBuffer getBuffer() {
+        return buffer;
+    }
+    
     public int getInternalOffset(int offset) {
         return (offset & mask);
     }
     
     
-    public final byte getByte(int offset) {
-        return space[getInternalOffset(offset)];
+    public byte getByte(int offset) {
+        return buffer.get(getInternalOffset(offset));
     }
     
-    public final short getHalfWord(int offset) {
-        offset = getInternalOffset(offset);
-        return (short) ((space[offset] & 0x00FF) |
-                        (space[offset + 1] << 8));
+    public short getHalfWord(int offset) {
+        return buffer.getShort(getInternalOffset(offset));
     }
     
-    public final int getWord(int offset) {
-        offset = getInternalOffset(offset);
-        return (((space[offset] & 0x000000FF)) |
-                ((space[offset + 1] & 0x000000FF) << 8) |
-                ((space[offset + 2] & 0x000000FF) << 16) |
-                ((space[offset + 3]) << 24));
+    public int getWord(int offset) {
+        return buffer.getInt(getInternalOffset(offset));
     }
     
     
-    public final void setByte(int offset, byte value) {
+    public void setByte(int offset, byte value) {
         offset = getInternalOffset(offset);
         space[offset] = value;
+        markDirty(offset);
     }
     
-    public final void setHalfWord(int offset, short value) {
+    public void setHalfWord(int offset, short value) {
         offset = getInternalOffset(offset);
-        space[offset] = (byte) value;
-        space[offset + 1] = (byte) (value >>> 8);
+        buffer.putShort(offset, value);
+        markDirty(offset);
     }
     
-    public final void setWord(int offset, int value) {
+    public void setWord(int offset, int value) {
         offset = getInternalOffset(offset);
-        space[offset] = (byte) value;
-        space[offset + 1] = (byte) (value >>> 8);
-        space[offset + 2] = (byte) (value >>> 16);
-        space[offset + 3] = (byte) (value >>> 24);
+        buffer.putInt(offset, value);
+        markDirty(offset);
+    }
+    
+    
+    // ----- Dirty pages
+    // Offsets are internal offsets. A halfword or word store never crosses a
+    // page, so marking its first byte is enough.
+    
+    final void markDirty(int offset) {
+        dirtyPages[offset >>> (DirtyPageShift + 6)] |= 1L << (offset >>> DirtyPageShift);
+    }
+    
+    // For writes made straight into getSpace()
+    public final void markAllDirty() {
+        int pageCount = getPageCount();
+        for (int i = 0; i < dirtyPages.length; i++) {
+            int pages = pageCount - (i << 6);
+            dirtyPages[i] = (pages >= 64) ? -1L : ((1L << pages) - 1);
+        }
+    }
+    
+    public final int getPageCount() {
+        return (size + DirtyPageSize - 1) >>> DirtyPageShift;
+    }
+    
+    private void syncDirtyPages() {
+        for (int i = 0; i < dirtyPages.length; i++) {
+            long bits = dirtyPages[i];
+            if (bits == 0) continue;
+            changedPages[i] |= bits;
+            staleHashPages[i] |= bits;
+            for (long[] dirtyPageSet : dirtyPageSets) dirtyPageSet[i] |= bits;
+            dirtyPages[i] = 0;
+        }
+    }
+    
+    public final boolean isPageDirty(int page) {
+        syncDirtyPages();
+        return ((changedPages[page >>> 6] & (1L << page)) != 0);
+    }
+    
+    // Tells whether a byte of [offset, offset + length) was written since
+    // the last clearDirtyPages()
+    public final boolean isDirty(int offset, int length) {
+        syncDirtyPages();
+        int firstPage = getInternalOffset(offset) >>> DirtyPageShift;
+        int lastPage = Math.min(getInternalOffset(offset) + length, size) - 1;
+        for (int page = firstPage; page <= (lastPage >>> DirtyPageShift); page++) {
+            if ((changedPages[page >>> 6] & (1L << page)) != 0) return true;
+        }
+        return false;
+    }
+    
+    public final void clearDirtyPages() {
+        syncDirtyPages();
+        for (int i = 0; i < changedPages.length; i++) changedPages[i] = 0;
+    }
+    
+    // Bitmap of the pages written from now on, for a client that tracks
+    // them apart from isDirty()/clearDirtyPages(): it calls
+    // updateDirtyPageSets() before reading it and clears the bits it handled
+    public final long[] createDirtyPageSet() {
+        syncDirtyPages();
+        long[] dirtyPageSet = new long[dirtyPages.length];
+        long[][] sets = new long[dirtyPageSets.length + 1][];
+        System.arraycopy(dirtyPageSets, 0, sets, 0, dirtyPageSets.length);
+        sets[dirtyPageSets.length] = dirtyPageSet;
+        dirtyPageSets = sets;
+        return dirtyPageSet;
+    }
+    
+    public final void updateDirtyPageSets() {
+        syncDirtyPages();
+    }
+    
+    
+    // ----- Hashing
+    
+    private final static long
+            HashSeed = 0xCBF29CE484222325L,
+            HashMultiplier = 0x9E3779B97F4A7C15L;
+    
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * HashMultiplier;
+        return hash ^ (hash >>> 29);
+    }
+    
+    private long hashBytes(int offset, int length) {
+        long hash = HashSeed;
+        int end = offset + length;
+        for (; offset + 8 <= end; offset += 8) hash = mix(hash, buffer.getLong(offset));
+        for (; offset < end; offset++) hash = mix(hash, buffer.get(offset));
+        return hash;
+    }
+    
+    // 64-bit hash of [offset, offset + length), clipped to the end of the
+    // bank. Each page is hashed once and again only after it was written,
+    // so the cost follows the amount of changed memory.
+    public final long getHash64(int offset, int length) {
+        syncDirtyPages();
+        if (pageHashes == null) pageHashes = new long[getPageCount()];
+        
+        offset = getInternalOffset(offset);
+        int end = Math.min(offset + length, size);
+        long hash = HashSeed;
+        while (offset < end) {
+            int page = offset >>> DirtyPageShift;
+            int pageStart = page << DirtyPageShift;
+            int pageEnd = Math.min(pageStart + DirtyPageSize, size);
+            if ((offset == pageStart) && (pageEnd <= end)) {
+                long bit = 1L << page;
+                if ((staleHashPages[page >>> 6] & bit) != 0) {
+                    pageHashes[page] = hashBytes(pageStart, pageEnd - pageStart);
+                    staleHashPages[page >>> 6] &= ~bit;
+                }
+                hash = mix(hash, pageHashes[page]);
+            } else {
+                // Partial page at either end of the range
+                hash = mix(hash, hashBytes(offset, Math.min(pageEnd, end) - offset));
+            }
+            offset = Math.min(pageEnd, end);
+        }
+        return hash;
     }
     
     
@@ -92,10 +272,12 @@ abstract class MemoryManager
         hardReset();
     }
     
-    public final void hardReset() {
+    public void hardReset() {
+        if (space == null) return; // Shared image
         for (int i = 0; i < space.length; i++) {
             space[i] = 0;
         }
+        markAllDirty();
     }
     
     
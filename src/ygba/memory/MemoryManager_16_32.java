@@ -15,37 +15,30 @@ abstract class MemoryManager_16_32
     }
     
     public short loadHalfWord(int offset) {
-        offset = getInternalOffset(offset) & 0xFFFFFFFE;
-        return (short) ((space[offset] & 0x00FF) |
-                        (space[offset + 1] << 8));
+        return buffer.getShort(getInternalOffset(offset) & 0xFFFFFFFE);
     }
     
     public int loadWord(int offset) {
-        offset = getInternalOffset(offset) & 0xFFFFFFFC;
-        return (((space[offset] & 0x000000FF)) |
-                ((space[offset + 1] & 0x000000FF) << 8) |
-                ((space[offset + 2] & 0x000000FF) << 16) |
-                ((space[offset + 3]) << 24));
+        return buffer.getInt(getInternalOffset(offset) & 0xFFFFFFFC);
     }
     
     
     public void storeByte(int offset, byte value) {
         offset = getInternalOffset(offset) & 0xFFFFFFFE;
         space[offset] = space[offset + 1] = value;
+        markDirty(offset);
     }
     
     public void storeHalfWord(int offset, short value) {
         offset = getInternalOffset(offset) & 0xFFFFFFFE;
-        space[offset] = (byte) value;
-        space[offset + 1] = (byte) (value >>> 8);
+        buffer.putShort(offset, value);
+        markDirty(offset);
     }
     
     public void storeWord(int offset, int value) {
         offset = getInternalOffset(offset) & 0xFFFFFFFC;
-        space[offset] = (byte) value;
-        space[offset + 1] = (byte) (value >>> 8);
-        space[offset + 2] = (byte) (value >>> 16);
-        space[offset + 3] = (byte) (value >>> 24);
+        buffer.putInt(offset, value);
+        markDirty(offset);
     }
     
 }
@@ -22,6 +22,7 @@ abstract class MemoryManager_8
     public final void storeByte(int offset, byte value) {
         offset = getInternalOffset(offset);
         space[offset] = value;
+        markDirty(offset);
     }
     
     public final void storeHalfWord(int offset, short value) {}
@@ -1,11 +1,25 @@
 package ygba.memory;
 
+import ygba.gfx.GFX;
+
 public final class ObjectMemory
         extends MemoryManager_16_32 {
     
+    private final ObjectTable objectTable;
+    private GFX gfx;
+    
     
     public ObjectMemory() {
         super("Object RAM", 0x400);
+        objectTable = new ObjectTable(this);
+    }
+    
+    void connectToGraphics(GFX gfx) {
+        this.gfx = gfx;
+    }
+    
+    public ObjectTable getObjectTable() {
+        return objectTable;
     }
 
     public byte loadByte(int offset) {
@@ -17,6 +31,23 @@ public final class ObjectMemory
     public void storeByte(int offset, byte value) {
     }
     
+    public void storeHalfWord(int offset, short value) {
+        if (gfx != null) gfx.beforeObjectMemoryStore();
+        super.storeHalfWord(offset, value);
+        objectTable.invalidate();
+    }
+    
+    public void storeWord(int offset, int value) {
+        if (gfx != null) gfx.beforeObjectMemoryStore();
+        super.storeWord(offset, value);
+        objectTable.invalidate();
+    }
+    
+    public void hardReset() {
+        super.hardReset();
+        objectTable.invalidate();
+    }
+    
     
     public int getPriority(int objNumber) {
         int objAttributesAddress = (objNumber << 3);
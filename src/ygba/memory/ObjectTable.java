@@ -0,0 +1,127 @@
+package ygba.memory;
+
+/**
+ * Decoded copy of the 128 OBJ attribute entries and 32 rotation/scaling
+ * groups of Object RAM, with the list of the OBJs found on each scanline.
+ * ObjectMemory marks the table as changed when it is written; update()
+ * decodes it again only then, so the renderer reads plain fields and only
+ * looks at the OBJs of the line it draws.
+ */
+public final class ObjectTable {
+
+    public final static int
+            ObjectCount = 128,
+            GroupCount = 32,
+            LineCount = 160;
+
+    // OBJ modes (attr0 bits 10-11)
+    public final static int
+            NormalMode = 0,
+            SemiTransparentMode = 1,
+            WindowMode = 2;
+
+    private final ObjectMemory objMem;
+    private boolean isChanged;
+
+    // Attributes of each OBJ; yCoordinate is the first line covered (may be
+    // negative), displayWidth/displayHeight include the double size
+    public final int[] xSize = new int[ObjectCount];
+    public final int[] ySize = new int[ObjectCount];
+    public final int[] displayWidth = new int[ObjectCount];
+    public final int[] displayHeight = new int[ObjectCount];
+    public final int[] xCoordinate = new int[ObjectCount];
+    public final int[] yCoordinate = new int[ObjectCount];
+    public final int[] tileNumber = new int[ObjectCount];
+    public final int[] paletteNumber = new int[ObjectCount];
+    public final int[] priority = new int[ObjectCount];
+    public final int[] mode = new int[ObjectCount];
+    public final int[] rotScalGroupNumber = new int[ObjectCount];
+    public final boolean[] isRotScalEnabled = new boolean[ObjectCount];
+    public final boolean[] is256ColorPalette = new boolean[ObjectCount];
+    public final boolean[] isHFlipEnabled = new boolean[ObjectCount];
+    public final boolean[] isVFlipEnabled = new boolean[ObjectCount];
+
+    // Rotation/scaling parameters of each group
+    public final int[] pa = new int[GroupCount];
+    public final int[] pb = new int[GroupCount];
+    public final int[] pc = new int[GroupCount];
+    public final int[] pd = new int[GroupCount];
+
+    // OBJ numbers covering each line, from 127 down to 0: normal and
+    // semi-transparent OBJs, then OBJ window OBJs
+    public final int[][] lineObjects = new int[LineCount][ObjectCount];
+    public final int[] lineObjectCounts = new int[LineCount];
+    public final int[][] lineWindowObjects = new int[LineCount][ObjectCount];
+    public final int[] lineWindowObjectCounts = new int[LineCount];
+
+
+    ObjectTable(ObjectMemory objMem) {
+        this.objMem = objMem;
+        isChanged = true;
+    }
+
+    void invalidate() {
+        isChanged = true;
+    }
+
+    public void update() {
+        if (!isChanged) return;
+        isChanged = false;
+
+        for (int groupNumber = 0; groupNumber < GroupCount; groupNumber++) {
+            pa[groupNumber] = objMem.getPA(groupNumber);
+            pb[groupNumber] = objMem.getPB(groupNumber);
+            pc[groupNumber] = objMem.getPC(groupNumber);
+            pd[groupNumber] = objMem.getPD(groupNumber);
+        }
+
+        for (int line = 0; line < LineCount; line++) {
+            lineObjectCounts[line] = 0;
+            lineWindowObjectCounts[line] = 0;
+        }
+
+        for (int objNumber = ObjectCount - 1; objNumber >= 0; objNumber--) {
+            decodeObject(objNumber);
+
+            if (xSize[objNumber] == 0 || ySize[objNumber] == 0) continue;
+            if (!isRotScalEnabled[objNumber] && !objMem.isDisplayable(objNumber)) continue;
+
+            boolean isWindow = (mode[objNumber] == WindowMode);
+            int[][] lines = isWindow ? lineWindowObjects : lineObjects;
+            int[] counts = isWindow ? lineWindowObjectCounts : lineObjectCounts;
+
+            int firstLine = Math.max(yCoordinate[objNumber], 0);
+            int lastLine = Math.min(yCoordinate[objNumber] + displayHeight[objNumber], LineCount);
+            for (int line = firstLine; line < lastLine; line++) {
+                lines[line][counts[line]++] = objNumber;
+            }
+        }
+    }
+
+    private void decodeObject(int objNumber) {
+        int w = objMem.getXSize(objNumber);
+        int h = objMem.getYSize(objNumber);
+        boolean isRotScal = objMem.isRotScalEnabled(objNumber);
+        boolean isDoubleSize = isRotScal && objMem.isDoubleSizeEnabled(objNumber);
+
+        xSize[objNumber] = w;
+        ySize[objNumber] = h;
+        displayWidth[objNumber] = isDoubleSize ? w * 2 : w;
+        displayHeight[objNumber] = isDoubleSize ? h * 2 : h;
+
+        xCoordinate[objNumber] = objMem.getXCoordinate(objNumber);
+        int y = objMem.getYCoordinate(objNumber);
+        yCoordinate[objNumber] = (y >= LineCount) ? y - 256 : y;
+
+        tileNumber[objNumber] = objMem.getTileNumber(objNumber);
+        paletteNumber[objNumber] = objMem.getPaletteNumber(objNumber);
+        priority[objNumber] = objMem.getPriority(objNumber);
+        mode[objNumber] = objMem.getOBJMode(objNumber);
+        rotScalGroupNumber[objNumber] = objMem.getRotScalGroupNumber(objNumber);
+        isRotScalEnabled[objNumber] = isRotScal;
+        is256ColorPalette[objNumber] = objMem.is256ColorPalette(objNumber);
+        isHFlipEnabled[objNumber] = objMem.isHFlipEnabled(objNumber);
+        isVFlipEnabled[objNumber] = objMem.isVFlipEnabled(objNumber);
+    }
+
+}
@@ -1,11 +1,42 @@
 package ygba.memory;
 
+import ygba.gfx.GFX;
+
 public final class PaletteMemory
         extends MemoryManager_16_32 {
     
+    // RGB555 to ARGB conversion, indexed by the 15-bit color
+    private final static int[] DefaultColorTable = createDefaultColorTable();
+    
+    private int[] colorTable;
+    // Palette entries converted with colorTable: 256 BG colors, then 256 OBJ colors
+    private final int[] colors;
+    // The same entries as RGB555 colors, for the color special effects
+    private final int[] rgb15Colors;
+    private GFX gfx;
+    
     
     public PaletteMemory() {
         super("Palette RAM", 0x400);
+        colorTable = DefaultColorTable;
+        colors = new int[0x200];
+        rgb15Colors = new int[0x200];
+        updateColors();
+    }
+    
+    private static int[] createDefaultColorTable() {
+        int[] table = new int[0x8000];
+        for (int rgb15 = 0; rgb15 < table.length; rgb15++) {
+            int red   = (rgb15 & 0x001F) << 19;
+            int green = (rgb15 & 0x03E0) <<  6;
+            int blue  = (rgb15 & 0x7C00) >>> 7;
+            table[rgb15] = 0xFF000000 | red | green | blue;
+        }
+        return table;
+    }
+    
+    void connectToGraphics(GFX gfx) {
+        this.gfx = gfx;
     }
 
     public byte loadByte(int offset) {
@@ -15,9 +46,87 @@ public final class PaletteMemory
 
     // 8-bit palette writes mirror to both bytes of the addressed halfword.
     public void storeByte(int offset, byte value) {
+        if (gfx != null) gfx.beforePaletteMemoryStore();
         offset = getInternalOffset(offset) & 0xFFFFFFFE;
         space[offset] = value;
         space[offset + 1] = value;
+        markDirty(offset);
+        updateColor(offset >>> 1);
+    }
+    
+    public void storeHalfWord(int offset, short value) {
+        if (gfx != null) gfx.beforePaletteMemoryStore();
+        super.storeHalfWord(offset, value);
+        updateColor((getInternalOffset(offset) & 0xFFFFFFFE) >>> 1);
+    }
+    
+    public void storeWord(int offset, int value) {
+        if (gfx != null) gfx.beforePaletteMemoryStore();
+        super.storeWord(offset, value);
+        int index = (getInternalOffset(offset) & 0xFFFFFFFC) >>> 1;
+        updateColor(index);
+        updateColor(index + 1);
+    }
+    
+    public void hardReset() {
+        super.hardReset();
+        updateColors();
+    }
+    
+    
+    // ----- Converted colors
+    
+    // ARGB colors of the 512 palette entries, updated on every palette
+    // write; the array is the same for the lifetime of the memory
+    public int[] getColors() {
+        return colors;
+    }
+    
+    public int getColor(int index) {
+        return colors[index];
+    }
+    
+    // RGB555 colors of the 512 palette entries, before conversion (color
+    // effects); the array is the same for the lifetime of the memory
+    public int[] getRGB15Colors() {
+        return rgb15Colors;
+    }
+    
+    public int getRGB15(int index) {
+        return rgb15Colors[index];
+    }
+    
+    // RGB555 to ARGB conversion of the palette entries and bitmap modes,
+    // indexed by the 15-bit color
+    public int[] getColorTable() {
+        return colorTable;
+    }
+    
+    // Converts a direct RGB555 color (bitmap modes) like the palette entries
+    public int toARGB(int rgb15) {
+        return colorTable[rgb15 & 0x7FFF];
+    }
+    
+    // Replaces the RGB555 to ARGB conversion, e.g. with an LCD color
+    // correction profile; null restores the plain 5-to-8 bit expansion
+    public void setColorTable(int[] table) {
+        if ((table != null) && (table.length != 0x8000)) {
+            throw new IllegalArgumentException("Color table must have 32768 entries");
+        }
+        // Lines drawn but not yet resolved keep the previous conversion
+        if (gfx != null) gfx.resolvePendingLines();
+        colorTable = (table != null) ? table : DefaultColorTable;
+        updateColors();
+    }
+    
+    private void updateColor(int index) {
+        int rgb15 = buffer.getShort(index << 1) & 0x7FFF;
+        rgb15Colors[index] = rgb15;
+        colors[index] = colorTable[rgb15];
+    }
+    
+    private void updateColors() {
+        for (int index = 0; index < colors.length; index++) updateColor(index);
     }
     
 }
@@ -123,12 +123,14 @@ public final class SaveMemory
                 if (offset == 0x5555 && v == 0x10) {
                     // Erase entire chip
                     for (int i = 0; i < space.length; i++) space[i] = (byte) 0xFF;
+                    markAllDirty();
                     if (persistence != null) persistence.markDirty();
                 } else if (v == 0x30) {
                     // Erase 4KB sector
                     int sector = bankOffset + (offset & 0xF000);
                     for (int i = sector; i < sector + 0x1000 && i < space.length; i++) {
                         space[i] = (byte) 0xFF;
+                        markDirty(i);
                     }
                     if (persistence != null) persistence.markDirty();
                 }
@@ -138,6 +140,7 @@ public final class SaveMemory
             case STATE_WRITE:
                 // Single byte program (can only clear bits, not set them — but we'll allow any write)
                 space[bankOffset + offset] = value;
+                markDirty(bankOffset + offset);
                 if (persistence != null) persistence.markDirty();
                 state = STATE_READY;
                 break;
@@ -35,6 +35,7 @@ public final class SavePersistence {
                 pos += bytesRead;
                 remaining -= bytesRead;
             }
+            saveMem.markAllDirty();
             System.out.println("[SAVE] loaded " + pos + " bytes from " + saveFile.getPath());
         } catch (IOException e) {
             System.out.println("[SAVE] failed to load save file: " + e.getMessage());
@@ -0,0 +1,78 @@
+package ygba.memory;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only ROM or BIOS image, shared by all the Memory instances of the
+ * JVM that load the same content (same CRC32 and size).
+ * The data is either a memory-mapped file or a heap buffer holding an
+ * inflated or downloaded file. An image is dropped from the registry once
+ * no Memory holds it anymore.
+ */
+final class SharedImage {
+
+    private final static HashMap<Long, WeakReference<SharedImage>> images =
+            new HashMap<Long, WeakReference<SharedImage>>();
+
+    private final ByteBuffer data;
+    private final long crc32;
+
+
+    private SharedImage(ByteBuffer data, long crc32) {
+        this.data = data;
+        this.crc32 = crc32;
+    }
+
+    private static long getKey(long crc32, int size) {
+        return (((long) size << 32) | crc32);
+    }
+
+    static synchronized SharedImage find(long crc32, int size) {
+        WeakReference<SharedImage> reference = images.get(getKey(crc32, size));
+        return (reference != null) ? reference.get() : null;
+    }
+
+    // Returns the registered image with the same content, or registers this one
+    static SharedImage share(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        long crc32 = crc.getValue();
+        int size = data.remaining();
+
+        synchronized (SharedImage.class) {
+            SharedImage image = find(crc32, size);
+            if (image != null) return image;
+
+            Iterator<WeakReference<SharedImage>> iterator = images.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().get() == null) iterator.remove();
+            }
+            image = new SharedImage(data.asReadOnlyBuffer(), crc32);
+            images.put(getKey(crc32, size), new WeakReference<SharedImage>(image));
+            return image;
+        }
+    }
+
+
+    int getSize() {
+        return data.capacity();
+    }
+
+    long getCRC32() {
+        return crc32;
+    }
+
+    // Little-endian view of [offset, offset + length), for one memory bank
+    ByteBuffer getView(int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
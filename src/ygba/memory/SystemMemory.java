@@ -9,6 +9,22 @@ public final class SystemMemory
     }
     
     
+    public void setByte(int offset, byte value) {
+        if (isSharedImage()) handleAccessViolation(offset);
+        else super.setByte(offset, value);
+    }
+    
+    public void setHalfWord(int offset, short value) {
+        if (isSharedImage()) handleAccessViolation(offset);
+        else super.setHalfWord(offset, value);
+    }
+    
+    public void setWord(int offset, int value) {
+        if (isSharedImage()) handleAccessViolation(offset);
+        else super.setWord(offset, value);
+    }
+    
+    
     public void storeByte(int offset, byte value) {
         handleAccessViolation(offset);
     }
@@ -0,0 +1,121 @@
+package ygba.memory;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Decoded 8x8 tiles of video memory, one color index per byte, row-major.
+ * A tile is addressed like video memory, on a 32-byte boundary: 4-bit tiles
+ * take 32 bytes and 8-bit tiles 64. Each flip combination of a tile is
+ * decoded the first time it is asked for, and again after a store to the
+ * tile (VideoMemory invalidates the 32 bytes it writes to).
+ * Several renderer threads may decode tiles at the same time, while video
+ * memory is not written: a tile is marked as decoded after its indices are
+ * written, so a thread that sees the mark also sees the indices.
+ */
+public final class TileCache {
+
+    public final static int
+            HFlip = 0x1,
+            VFlip = 0x2;
+
+    private final static int
+            SlotCount = 0x18000 >>> 5,
+            TileSize = 64;
+
+    private final VideoMemory vidMem;
+
+    // Decoded tiles: 4 flip combinations for each 32-byte slot, and for
+    // the 8-bit tiles of the last slot in each mirror
+    private final byte[] tiles4, tiles8;
+    // Decoded combinations of each slot: bits 0-3 for tiles4, bits 4-7 for tiles8
+    private final AtomicIntegerArray validFlips;
+
+
+    TileCache(VideoMemory vidMem) {
+        this.vidMem = vidMem;
+        tiles4 = new byte[SlotCount * 4 * TileSize];
+        tiles8 = new byte[(SlotCount + 2) * 4 * TileSize];
+        validFlips = new AtomicIntegerArray(SlotCount + 2);
+    }
+
+    // Called after a store to the byte at the internal offset
+    void invalidate(int offset) {
+        int slot = offset >>> 5;
+        validFlips.lazySet(slot, 0);
+        // The 8-bit tile starting 32 bytes before also covers this byte
+        if (slot > 0) validFlips.lazySet(slot - 1, validFlips.get(slot - 1) & 0x0F);
+        // The 8-bit tiles of the last slot continue in one of the mirrors
+        if (slot == SlotCount - 1 || slot == (0x10000 >>> 5)) validFlips.lazySet(SlotCount, 0);
+        if (slot == SlotCount - 1 || slot == 0) validFlips.lazySet(SlotCount + 1, 0);
+    }
+
+    void invalidateAll() {
+        for (int slot = 0; slot < SlotCount + 2; slot++) validFlips.lazySet(slot, 0);
+    }
+
+
+    public byte[] getTiles4() {
+        return tiles4;
+    }
+
+    public byte[] getTiles8() {
+        return tiles8;
+    }
+
+    // Returns where the 64 color indices (0-15) of the 4-bit tile at address
+    // start in getTiles4(), with flip (HFlip, VFlip) applied
+    public int getTile4(int address, int flip) {
+        int slot = vidMem.getInternalOffset(address) >>> 5;
+        int tile = ((slot << 2) | flip) * TileSize;
+        int bit = 1 << flip;
+        if ((validFlips.get(slot) & bit) == 0) {
+            decodeTile4(slot << 5, flip, tile);
+            validFlips.getAndAccumulate(slot, bit, (flips, b) -> flips | b);
+        }
+        return tile;
+    }
+
+    // Returns where the 64 color indices (0-255) of the 8-bit tile at address
+    // start in getTiles8(), with flip (HFlip, VFlip) applied
+    public int getTile8(int address, int flip) {
+        int slot = vidMem.getInternalOffset(address) >>> 5;
+        int tileAddress = slot << 5;
+        if (slot == SlotCount - 1) {
+            // The second half depends on which mirror the address is in
+            // (0x10000 or 0x00000): one extra slot for each
+            slot = (vidMem.getInternalOffset(address + 32) == 0) ? SlotCount + 1 : SlotCount;
+            tileAddress = address;
+        }
+        int tile = ((slot << 2) | flip) * TileSize;
+        int bit = 0x10 << flip;
+        if ((validFlips.get(slot) & bit) == 0) {
+            decodeTile8(tileAddress, flip, tile);
+            validFlips.getAndAccumulate(slot, bit, (flips, b) -> flips | b);
+        }
+        return tile;
+    }
+
+    private void decodeTile4(int offset, int flip, int tile) {
+        byte[] space = vidMem.space;
+        for (int y = 0; y < 8; y++) {
+            int row = ((flip & VFlip) != 0) ? 7 - y : y;
+            for (int x = 0; x < 8; x++) {
+                int column = ((flip & HFlip) != 0) ? 7 - x : x;
+                int data = space[offset + (row * 4) + (column >>> 1)];
+                tiles4[tile + (y * 8) + x] = (byte) (((column & 0x01) != 0) ? ((data >>> 4) & 0x0F) : (data & 0x0F));
+            }
+        }
+    }
+
+    private void decodeTile8(int address, int flip, int tile) {
+        byte[] space = vidMem.space;
+        for (int y = 0; y < 8; y++) {
+            int row = ((flip & VFlip) != 0) ? 7 - y : y;
+            for (int x = 0; x < 8; x++) {
+                int column = ((flip & HFlip) != 0) ? 7 - x : x;
+                tiles8[tile + (y * 8) + x] = space[vidMem.getInternalOffset(address + (row * 8) + column)];
+            }
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package ygba.memory;
 
+import ygba.gfx.GFX;
+
 public final class VideoMemory
         extends MemoryManager_16_32 {
     
@@ -10,6 +12,8 @@ public final class VideoMemory
     private final static int OBJTileBaseOffsetMode3To5 = 0x14000;
     
     private IORegMemory iorMem;
+    private GFX gfx;
+    private final TileCache tileCache;
     private long byteWriteCount;
     private long byteWriteIgnoredCount;
     private long halfWordWriteCount;
@@ -22,12 +26,21 @@ public final class VideoMemory
         byteWriteIgnoredCount = 0;
         halfWordWriteCount = 0;
         wordWriteCount = 0;
+        tileCache = new TileCache(this);
     }
     
     void connectToIORegMemory(IORegMemory iorMem) {
         this.iorMem = iorMem;
     }
     
+    void connectToGraphics(GFX gfx) {
+        this.gfx = gfx;
+    }
+    
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+    
     public byte loadByte(int offset) {
         offset = getInternalOffset(offset);
         return space[offset];
@@ -48,18 +61,34 @@ public final class VideoMemory
             byteWriteIgnoredCount++;
             return;
         }
+        if (gfx != null) gfx.beforeVideoMemoryStore(offset);
         space[offset] = value;
         space[offset + 1] = value;
+        markDirty(offset);
+        tileCache.invalidate(offset);
     }
 
     public void storeHalfWord(int offset, short value) {
         halfWordWriteCount++;
-        super.storeHalfWord(offset, value);
+        offset = getInternalOffset(offset) & 0xFFFFFFFE;
+        if (gfx != null) gfx.beforeVideoMemoryStore(offset);
+        buffer.putShort(offset, value);
+        markDirty(offset);
+        tileCache.invalidate(offset);
     }
 
     public void storeWord(int offset, int value) {
         wordWriteCount++;
-        super.storeWord(offset, value);
+        offset = getInternalOffset(offset) & 0xFFFFFFFC;
+        if (gfx != null) gfx.beforeVideoMemoryStore(offset);
+        buffer.putInt(offset, value);
+        markDirty(offset);
+        tileCache.invalidate(offset);
+    }
+    
+    public void hardReset() {
+        super.hardReset();
+        tileCache.invalidateAll();
     }
     
     public int getInternalOffset(int offset) {
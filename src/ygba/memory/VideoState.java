@@ -0,0 +1,175 @@
+package ygba.memory;
+
+import java.util.Arrays;
+
+/**
+ * Decoded copy of the LCD registers (DISPCNT, BGxCNT, scrolling, rotation
+ * and scaling, windows, mosaic and color special effects).
+ * IORegMemory updates it when one of these registers is written, so the
+ * renderer reads plain fields instead of decoding register bits for each
+ * layer or pixel. Arrays are indexed by BG number, window number or layer
+ * (0-3 = BG0-BG3, 4 = OBJ, 5 = backdrop).
+ */
+public final class VideoState {
+
+    // DISPCNT
+    public int videoMode;
+    public boolean isFrame1Selected;
+    public boolean isOBJ1DMapping;
+    public boolean isForcedBlank;
+    public boolean isOBJEnabled;
+    public boolean isOBJWinEnabled;
+    public final boolean[] isBGEnabled = new boolean[4];
+    public final boolean[] isWinEnabled = new boolean[2];
+
+    // BGxCNT
+    public final int[] priority = new int[4];
+    public final int[] characterBaseAddress = new int[4];
+    public final int[] screenBaseAddress = new int[4];
+    public final boolean[] isMosaicEnabled = new boolean[4];
+    public final boolean[] is256ColorPalette = new boolean[4];
+    public final boolean[] isWraparoundOverflow = new boolean[4];
+    public final int[] textModeXSize = new int[4];
+    public final int[] textModeYSize = new int[4];
+    public final int[] rotScalModeXYSize = new int[4];
+
+    // BGxHOFS, BGxVOFS
+    public final int[] xOffset = new int[4];
+    public final int[] yOffset = new int[4];
+
+    // BG(2-3)(X-Y), BG(2-3)(PA-PB-PC-PD)
+    public final int[] xCoordinate = new int[4];
+    public final int[] yCoordinate = new int[4];
+    public final int[] pa = new int[4];
+    public final int[] pb = new int[4];
+    public final int[] pc = new int[4];
+    public final int[] pd = new int[4];
+
+    // WINxH, WINxV, WININ, WINOUT
+    public final int[] winLeft = new int[2];
+    public final int[] winRight = new int[2];
+    public final int[] winTop = new int[2];
+    public final int[] winBottom = new int[2];
+    public final int[] winInside = new int[2];
+    public int winOutside;
+    public int winOBJ;
+
+    // MOSAIC
+    public int bgMosaicXSize;
+    public int bgMosaicYSize;
+    public int objMosaicXSize;
+    public int objMosaicYSize;
+
+    // BLDMOD, COLEV, COLY
+    public int blendMode;
+    public final boolean[] isFirstTarget = new boolean[6];
+    public final boolean[] isSecondTarget = new boolean[6];
+    public int eva;
+    public int evb;
+    public int evy;
+
+
+    public VideoState() {}
+
+    public void copyFrom(VideoState state) {
+        videoMode = state.videoMode;
+        isFrame1Selected = state.isFrame1Selected;
+        isOBJ1DMapping = state.isOBJ1DMapping;
+        isForcedBlank = state.isForcedBlank;
+        isOBJEnabled = state.isOBJEnabled;
+        isOBJWinEnabled = state.isOBJWinEnabled;
+        System.arraycopy(state.isBGEnabled, 0, isBGEnabled, 0, 4);
+        System.arraycopy(state.isWinEnabled, 0, isWinEnabled, 0, 2);
+
+        System.arraycopy(state.priority, 0, priority, 0, 4);
+        System.arraycopy(state.characterBaseAddress, 0, characterBaseAddress, 0, 4);
+        System.arraycopy(state.screenBaseAddress, 0, screenBaseAddress, 0, 4);
+        System.arraycopy(state.isMosaicEnabled, 0, isMosaicEnabled, 0, 4);
+        System.arraycopy(state.is256ColorPalette, 0, is256ColorPalette, 0, 4);
+        System.arraycopy(state.isWraparoundOverflow, 0, isWraparoundOverflow, 0, 4);
+        System.arraycopy(state.textModeXSize, 0, textModeXSize, 0, 4);
+        System.arraycopy(state.textModeYSize, 0, textModeYSize, 0, 4);
+        System.arraycopy(state.rotScalModeXYSize, 0, rotScalModeXYSize, 0, 4);
+
+        System.arraycopy(state.xOffset, 0, xOffset, 0, 4);
+        System.arraycopy(state.yOffset, 0, yOffset, 0, 4);
+
+        System.arraycopy(state.xCoordinate, 0, xCoordinate, 0, 4);
+        System.arraycopy(state.yCoordinate, 0, yCoordinate, 0, 4);
+        System.arraycopy(state.pa, 0, pa, 0, 4);
+        System.arraycopy(state.pb, 0, pb, 0, 4);
+        System.arraycopy(state.pc, 0, pc, 0, 4);
+        System.arraycopy(state.pd, 0, pd, 0, 4);
+
+        System.arraycopy(state.winLeft, 0, winLeft, 0, 2);
+        System.arraycopy(state.winRight, 0, winRight, 0, 2);
+        System.arraycopy(state.winTop, 0, winTop, 0, 2);
+        System.arraycopy(state.winBottom, 0, winBottom, 0, 2);
+        System.arraycopy(state.winInside, 0, winInside, 0, 2);
+        winOutside = state.winOutside;
+        winOBJ = state.winOBJ;
+
+        bgMosaicXSize = state.bgMosaicXSize;
+        bgMosaicYSize = state.bgMosaicYSize;
+        objMosaicXSize = state.objMosaicXSize;
+        objMosaicYSize = state.objMosaicYSize;
+
+        blendMode = state.blendMode;
+        System.arraycopy(state.isFirstTarget, 0, isFirstTarget, 0, 6);
+        System.arraycopy(state.isSecondTarget, 0, isSecondTarget, 0, 6);
+        eva = state.eva;
+        evb = state.evb;
+        evy = state.evy;
+    }
+
+    // Compares everything but EVA, EVB and EVY, which do not change what
+    // the layers draw, only how their colors are mixed
+    public boolean hasSameLayers(VideoState state) {
+        return videoMode == state.videoMode
+                && isFrame1Selected == state.isFrame1Selected
+                && isOBJ1DMapping == state.isOBJ1DMapping
+                && isForcedBlank == state.isForcedBlank
+                && isOBJEnabled == state.isOBJEnabled
+                && isOBJWinEnabled == state.isOBJWinEnabled
+                && Arrays.equals(isBGEnabled, state.isBGEnabled)
+                && Arrays.equals(isWinEnabled, state.isWinEnabled)
+
+                && Arrays.equals(priority, state.priority)
+                && Arrays.equals(characterBaseAddress, state.characterBaseAddress)
+                && Arrays.equals(screenBaseAddress, state.screenBaseAddress)
+                && Arrays.equals(isMosaicEnabled, state.isMosaicEnabled)
+                && Arrays.equals(is256ColorPalette, state.is256ColorPalette)
+                && Arrays.equals(isWraparoundOverflow, state.isWraparoundOverflow)
+                && Arrays.equals(textModeXSize, state.textModeXSize)
+                && Arrays.equals(textModeYSize, state.textModeYSize)
+                && Arrays.equals(rotScalModeXYSize, state.rotScalModeXYSize)
+
+                && Arrays.equals(xOffset, state.xOffset)
+                && Arrays.equals(yOffset, state.yOffset)
+
+                && Arrays.equals(xCoordinate, state.xCoordinate)
+                && Arrays.equals(yCoordinate, state.yCoordinate)
+                && Arrays.equals(pa, state.pa)
+                && Arrays.equals(pb, state.pb)
+                && Arrays.equals(pc, state.pc)
+                && Arrays.equals(pd, state.pd)
+
+                && Arrays.equals(winLeft, state.winLeft)
+                && Arrays.equals(winRight, state.winRight)
+                && Arrays.equals(winTop, state.winTop)
+                && Arrays.equals(winBottom, state.winBottom)
+                && Arrays.equals(winInside, state.winInside)
+                && winOutside == state.winOutside
+                && winOBJ == state.winOBJ
+
+                && bgMosaicXSize == state.bgMosaicXSize
+                && bgMosaicYSize == state.bgMosaicYSize
+                && objMosaicXSize == state.objMosaicXSize
+                && objMosaicYSize == state.objMosaicYSize
+
+                && blendMode == state.blendMode
+                && Arrays.equals(isFirstTarget, state.isFirstTarget)
+                && Arrays.equals(isSecondTarget, state.isSecondTarget);
+    }
+
+}
@@ -0,0 +1,25 @@
+package ygba.time;
+
+/**
+ * Something that must happen at a given cycle, queued in a Scheduler.
+ * An event is scheduled at most once at a time: scheduling it again
+ * moves it.
+ */
+public abstract class Event {
+    
+    long time;
+    long sequence;
+    int queueIndex = -1;
+    
+    
+    public final long getTime() {
+        return time;
+    }
+    
+    public final boolean isScheduled() {
+        return (queueIndex >= 0);
+    }
+    
+    protected abstract void handle();
+    
+}
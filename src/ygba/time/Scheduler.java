@@ -0,0 +1,150 @@
+package ygba.time;
+
+import ygba.cpu.ARM7TDMI;
+
+import java.util.Arrays;
+
+/**
+ * Cycle-timestamped event queue (binary min-heap) driving the emulation.
+ * The CPU runs uninterrupted in slices that end at the next pending event;
+ * an event scheduled during a slice for an earlier time shortens it.
+ * A halted CPU consumes its whole slice at once, so that time skips
+ * straight to the next event.
+ * Events due at the same cycle are handled in scheduling order.
+ */
+public final class Scheduler {
+    
+    private ARM7TDMI cpu;
+    
+    private Event[] queue;
+    private int size;
+    private long sequence;
+    
+    private long currentTime;
+    private long sliceEnd;
+    private boolean isRunning;
+    
+    
+    public Scheduler() {
+        queue = new Event[16];
+        reset();
+    }
+    
+    public void connectToCPU(ARM7TDMI cpu) {
+        this.cpu = cpu;
+    }
+    
+    public void reset() {
+        for (int i = 0; i < size; i++) {
+            queue[i].queueIndex = -1;
+            queue[i] = null;
+        }
+        size = 0;
+        sequence = 0;
+        currentTime = 0;
+        sliceEnd = 0;
+        isRunning = false;
+    }
+    
+    
+    public long getCurrentTime() {
+        return (isRunning ? sliceEnd - cpu.getRemainingCycles() : currentTime);
+    }
+    
+    public long getNextEventTime() {
+        return ((size > 0) ? queue[0].time : Long.MAX_VALUE);
+    }
+    
+    public void schedule(Event event, long time) {
+        if (event.isScheduled()) remove(event);
+        event.time = time;
+        event.sequence = sequence++;
+        
+        if (size == queue.length) queue = Arrays.copyOf(queue, size << 1);
+        queue[size] = event;
+        event.queueIndex = size;
+        size++;
+        siftUp(event.queueIndex);
+        
+        // The CPU is running past this event: end its slice there
+        if (isRunning && (time < sliceEnd)) {
+            long now = getCurrentTime();
+            sliceEnd = Math.max(time, now);
+            cpu.setRemainingCycles((int) (sliceEnd - now));
+        }
+    }
+    
+    public void scheduleIn(Event event, long delay) {
+        schedule(event, getCurrentTime() + delay);
+    }
+    
+    public void cancel(Event event) {
+        if (event.isScheduled()) remove(event);
+    }
+    
+    // Runs the CPU and handles the due events until endTime is reached
+    public void runUntil(long endTime) {
+        while (true) {
+            while ((size > 0) && (queue[0].time <= currentTime)) {
+                Event event = queue[0];
+                remove(event);
+                event.handle();
+            }
+            if (currentTime >= endTime) return;
+            
+            sliceEnd = Math.min(endTime, getNextEventTime());
+            isRunning = true;
+            cpu.run((int) (sliceEnd - currentTime));
+            isRunning = false;
+            currentTime = sliceEnd - cpu.getRemainingCycles();
+        }
+    }
+    
+    
+    private static boolean isBefore(Event e1, Event e2) {
+        return ((e1.time < e2.time) || ((e1.time == e2.time) && (e1.sequence < e2.sequence)));
+    }
+    
+    private void remove(Event event) {
+        int index = event.queueIndex;
+        event.queueIndex = -1;
+        size--;
+        Event last = queue[size];
+        queue[size] = null;
+        if (index == size) return;
+        
+        queue[index] = last;
+        last.queueIndex = index;
+        siftDown(index);
+        siftUp(last.queueIndex);
+    }
+    
+    private void siftUp(int index) {
+        Event event = queue[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBefore(event, queue[parent])) break;
+            queue[index] = queue[parent];
+            queue[index].queueIndex = index;
+            index = parent;
+        }
+        queue[index] = event;
+        event.queueIndex = index;
+    }
+    
+    private void siftDown(int index) {
+        Event event = queue[index];
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= size) break;
+            if ((child + 1 < size) && isBefore(queue[child + 1], queue[child])) child++;
+            if (!isBefore(queue[child], event)) break;
+            queue[index] = queue[child];
+            queue[index].queueIndex = index;
+            index = child;
+        }
+        queue[index] = event;
+        event.queueIndex = index;
+    }
+    
+}
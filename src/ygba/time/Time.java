@@ -21,6 +21,12 @@ public final class Time {
         }
     }
     
+    public void connectToScheduler(Scheduler scheduler) {
+        for (int i = 0; i < timer.length; i++) {
+            timer[i].connectToScheduler(scheduler);
+        }
+    }
+    
     public Timer getTimer(int timerNumber) {
         return timer[timerNumber];
     }
@@ -31,10 +37,4 @@ public final class Time {
         }
     }
     
-    public void addTime(int t) {
-        for (int i = 0; i < timer.length; i++) {
-            timer[i].addTime(t);
-        }
-    }
-    
 }
\ No newline at end of file
@@ -5,20 +5,32 @@ import ygba.memory.IORegMemory;
 
 public final class Timer {
 
-    private int time, reload, rest, period;
+    private int reload, period;
     private boolean isEnabled, isIRQEnabled, isCascadeEnabled;
     private Timer nextTimer;
 
+    // The counter held baseValue at cycle baseTime and has counted one tick
+    // per period since (prescaled timers only)
+    private int baseValue;
+    private long baseTime;
+
     private int timerNumber;
     private short timerInterruptBit;
 
     private IORegMemory iorMem;
+    private Scheduler scheduler;
+    private final Event overflowEvent;
 
 
     public Timer(Timer nextTimer, int timerNumber) {
         this.nextTimer = nextTimer;
         this.timerNumber = timerNumber;
         timerInterruptBit = (short) (0x0008 << timerNumber);
+        overflowEvent = new Event() {
+            protected void handle() {
+                overflow(overflowEvent.getTime());
+            }
+        };
         reset();
     }
 
@@ -26,16 +38,38 @@ public final class Timer {
         iorMem = memory.getIORegMemory();
     }
 
+    public void connectToScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public void reset() {
-        time = 0;
         reload = 0;
-        rest = 0;
         period = 1;
+        baseValue = 0;
+        baseTime = 0;
         isEnabled = isIRQEnabled = isCascadeEnabled = false;
+        if (scheduler != null) scheduler.cancel(overflowEvent);
+    }
+
+    private boolean isCounting() {
+        return (isEnabled && !isCascadeEnabled);
     }
 
     public void updateState(short control) {
         boolean wasEnabled = isEnabled;
+        boolean wasCounting = isCounting();
+        long now = scheduler.getCurrentTime();
+
+        // Bring the counter up to date, keeping the prescaler phase. An
+        // overflow that is due but whose event has not run yet (the CPU can
+        // overrun its slice) happens first, with the old settings.
+        if (wasCounting) {
+            long overflowTime;
+            while ((overflowTime = getOverflowTime()) <= now) overflow(overflowTime);
+            long elapsed = now - baseTime;
+            baseValue += (int) (elapsed / period);
+            baseTime = now - (elapsed % period);
+        }
 
         switch (control & 0x0003) {
             case 0: period = 1; break;
@@ -49,9 +83,16 @@ public final class Timer {
 
         // When timer transitions from disabled to enabled, load reload value
         if (!wasEnabled && isEnabled) {
-            time = reload;
-            rest = 0;
+            baseValue = reload;
+            baseTime = now;
+        } else if (!wasCounting && isCounting()) {
+            // Cascade to prescaled: count from now, not from the last
+            // time the counter was brought up to date
+            baseTime = now;
         }
+
+        if (isCounting()) scheduleOverflow();
+        else scheduler.cancel(overflowEvent);
     }
 
     public String getName() {
@@ -59,35 +100,46 @@ public final class Timer {
     }
 
     public short getTime() {
-        return (short) time;
+        return (short) getCounter(scheduler.getCurrentTime());
     }
 
     public void setTime(int t) {
         reload = t & 0x0000FFFF;
     }
 
-    public void addTime(int t) {
-        if (isEnabled && !isCascadeEnabled) {
-            rest += t;
-            while (rest >= period) {
-                time++;
-                if (time > 0x0000FFFF) {
-                    time = reload;
-                    if (nextTimer != null) nextTimer.addOverflowTime(1);
-                    if (isIRQEnabled) iorMem.generateInterrupt(timerInterruptBit);
-                }
-                rest -= period;
-            }
-        }
+    private int getCounter(long now) {
+        if (!isCounting()) return baseValue;
+        int ticks = (int) ((now - baseTime) / period);
+        int ticksToOverflow = 0x00010000 - baseValue;
+        if (ticks < ticksToOverflow) return baseValue + ticks;
+        // Read after the overflow time but before the overflow event ran
+        // (the CPU can overrun its slice): count on from the reload value
+        return reload + (ticks - ticksToOverflow) % (0x00010000 - reload);
+    }
+
+    private long getOverflowTime() {
+        return baseTime + (long) (0x00010000 - baseValue) * period;
+    }
+
+    private void scheduleOverflow() {
+        scheduler.schedule(overflowEvent, getOverflowTime());
+    }
+
+    private void overflow(long overflowTime) {
+        baseValue = reload;
+        baseTime = overflowTime;
+        scheduleOverflow();
+        if (nextTimer != null) nextTimer.addOverflowTime(1);
+        if (isIRQEnabled) iorMem.generateInterrupt(timerInterruptBit);
     }
 
     public void addOverflowTime(int t) {
         if (!isEnabled || !isCascadeEnabled) return;
 
         while (t > 0) {
-            time++;
-            if (time > 0x0000FFFF) {
-                time = reload;
+            baseValue++;
+            if (baseValue > 0x0000FFFF) {
+                baseValue = reload;
                 if (nextTimer != null) nextTimer.addOverflowTime(1);
                 if (isIRQEnabled) iorMem.generateInterrupt(timerInterruptBit);
             }
@@ -33,7 +33,7 @@ final class RegisterViewerTableModel extends InternationalTableModel {
 				reg = cpu.getCPSR();
 				break;
 			case 17:
-				if (ARM7TDMI.SPSR == ARM7TDMI.SPSR_null)
+				if (!cpu.hasSPSR())
 					return "";
 				reg = cpu.getSPSR();
 				break;
@@ -17,6 +17,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.function.LongSupplier;
 import java.util.zip.CRC32;
 
 import javax.imageio.ImageIO;
@@ -48,6 +50,7 @@ public final class YGBAApplet extends JApplet implements ActionListener, KeyList
 	private YGBA ygba;
 
 	private Memory memory;
+	private final HashMap<String, long[]> dumpChecksums = new HashMap<String, long[]>();
 	private IORegMemory iorMem;
 
 	private GFXScreen gfxScreen;
@@ -474,6 +477,32 @@ public final class YGBAApplet extends JApplet implements ActionListener, KeyList
 		out.println(name + "=" + hex8(mem.getWord(offset)));
 	}
 
+	// Checksums of the dumped memory sections, computed again only when the
+	// 64-bit hash of their range changed since the previous dump
+	private long cachedChecksum(String kind, int baseAddress, int size, LongSupplier checksum) {
+		String key = kind + "@" + Integer.toHexString(baseAddress) + "+" + Integer.toHexString(size);
+		long hash = memory.getHash64(baseAddress, size);
+		long[] entry = dumpChecksums.get(key);
+		if ((entry == null) || (entry[0] != hash)) {
+			entry = new long[] { hash, checksum.getAsLong() };
+			dumpChecksums.put(key, entry);
+		}
+		return entry[1];
+	}
+
+	private long cachedCRC32Range(int baseAddress, int size) {
+		return cachedChecksum("crc32", baseAddress, size, () -> crc32Range(baseAddress, size));
+	}
+
+	private long cachedCRC32StridedRange(int baseAddress, int size, int strideOffset, int stride) {
+		return cachedChecksum("crc32/" + strideOffset + "/" + stride, baseAddress, size,
+				() -> crc32StridedRange(baseAddress, size, strideOffset, stride));
+	}
+
+	private long cachedEqualHalfwordBytes(int baseAddress, int size) {
+		return cachedChecksum("pairs", baseAddress, size, () -> countEqualHalfwordBytes(baseAddress, size));
+	}
+
 	private long crc32Range(int baseAddress, int size) {
 		CRC32 crc32 = new CRC32();
 		for (int i = 0; i < size; i++) {
@@ -642,29 +671,29 @@ public final class YGBAApplet extends JApplet implements ActionListener, KeyList
 
 	private void dumpMemoryHashes(PrintWriter out) {
 		out.println("[memory_hashes]");
-		out.println("paletteCRC32=" + hex8((int) crc32Range(PaletteBaseAddress, 0x0400)));
-		out.println("bgPaletteCRC32=" + hex8((int) crc32Range(PaletteBaseAddress, 0x0200)));
-		out.println("objPaletteCRC32=" + hex8((int) crc32Range(PaletteBaseAddress + 0x0200, 0x0200)));
-		out.println("vramCRC32=" + hex8((int) crc32Range(VideoBaseAddress, 0x18000)));
-		out.println("vramBGCRC32=" + hex8((int) crc32Range(VideoBaseAddress, 0x10000)));
-		out.println("vramOBJCRC32=" + hex8((int) crc32Range(VideoBaseAddress + 0x10000, 0x8000)));
-		out.println("oamCRC32=" + hex8((int) crc32Range(ObjectBaseAddress, 0x0400)));
+		out.println("paletteCRC32=" + hex8((int) cachedCRC32Range(PaletteBaseAddress, 0x0400)));
+		out.println("bgPaletteCRC32=" + hex8((int) cachedCRC32Range(PaletteBaseAddress, 0x0200)));
+		out.println("objPaletteCRC32=" + hex8((int) cachedCRC32Range(PaletteBaseAddress + 0x0200, 0x0200)));
+		out.println("vramCRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress, 0x18000)));
+		out.println("vramBGCRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress, 0x10000)));
+		out.println("vramOBJCRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + 0x10000, 0x8000)));
+		out.println("oamCRC32=" + hex8((int) cachedCRC32Range(ObjectBaseAddress, 0x0400)));
 		for (int bg = 0; bg < 4; bg++) {
 			int charBase = iorMem.getCharacterBaseAddress(bg);
 			int screenBase = iorMem.getScreenBaseAddress(bg);
 			out.println("BG" + bg + "CharBase=" + hex8(VideoBaseAddress + charBase));
 			out.println("BG" + bg + "ScreenBase=" + hex8(VideoBaseAddress + screenBase));
-			out.println("BG" + bg + "CharCRC32=" + hex8((int) crc32Range(VideoBaseAddress + charBase, 0x4000)));
-			out.println("BG" + bg + "CharEvenCRC32=" + hex8((int) crc32StridedRange(VideoBaseAddress + charBase, 0x4000, 0, 2)));
-			out.println("BG" + bg + "CharOddCRC32=" + hex8((int) crc32StridedRange(VideoBaseAddress + charBase, 0x4000, 1, 2)));
-			out.println("BG" + bg + "CharEqualPairs=" + countEqualHalfwordBytes(VideoBaseAddress + charBase, 0x4000));
-			out.println("BG" + bg + "Map2KCRC32=" + hex8((int) crc32Range(VideoBaseAddress + screenBase, 0x0800)));
-			out.println("BG" + bg + "Map8KCRC32=" + hex8((int) crc32Range(VideoBaseAddress + screenBase, 0x2000)));
+			out.println("BG" + bg + "CharCRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + charBase, 0x4000)));
+			out.println("BG" + bg + "CharEvenCRC32=" + hex8((int) cachedCRC32StridedRange(VideoBaseAddress + charBase, 0x4000, 0, 2)));
+			out.println("BG" + bg + "CharOddCRC32=" + hex8((int) cachedCRC32StridedRange(VideoBaseAddress + charBase, 0x4000, 1, 2)));
+			out.println("BG" + bg + "CharEqualPairs=" + cachedEqualHalfwordBytes(VideoBaseAddress + charBase, 0x4000));
+			out.println("BG" + bg + "Map2KCRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + screenBase, 0x0800)));
+			out.println("BG" + bg + "Map8KCRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + screenBase, 0x2000)));
 		}
-		out.println("OBJTiles0CRC32=" + hex8((int) crc32Range(VideoBaseAddress + 0x10000, 0x2000)));
-		out.println("OBJTiles1CRC32=" + hex8((int) crc32Range(VideoBaseAddress + 0x12000, 0x2000)));
-		out.println("OBJTiles2CRC32=" + hex8((int) crc32Range(VideoBaseAddress + 0x14000, 0x2000)));
-		out.println("OBJTiles3CRC32=" + hex8((int) crc32Range(VideoBaseAddress + 0x16000, 0x2000)));
+		out.println("OBJTiles0CRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + 0x10000, 0x2000)));
+		out.println("OBJTiles1CRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + 0x12000, 0x2000)));
+		out.println("OBJTiles2CRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + 0x14000, 0x2000)));
+		out.println("OBJTiles3CRC32=" + hex8((int) cachedCRC32Range(VideoBaseAddress + 0x16000, 0x2000)));
 		out.println();
 	}
 
@@ -857,16 +886,20 @@ public final class YGBAApplet extends JApplet implements ActionListener, KeyList
 				dumpObjectSummary(out);
 				dumpOAMEntries(out);
 				out.println("[layers]");
-				out.println("BG0LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(0)));
-				out.println("BG1LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(1)));
-				out.println("BG2LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(2)));
-				out.println("BG3LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(3)));
-				out.println("OBJLayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(4)));
-				out.println("BG0LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(0));
-				out.println("BG1LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(1));
-				out.println("BG2LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(2));
-				out.println("BG3LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(3));
-				out.println("OBJLayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(4));
+				if (!ygba.getGraphics().isLayerCaptureEnabled()) {
+					out.println("layerCapture=disabled (-Dygba.debug.layers=true)");
+				} else {
+					out.println("BG0LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(0)));
+					out.println("BG1LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(1)));
+					out.println("BG2LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(2)));
+					out.println("BG3LayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(3)));
+					out.println("OBJLayerCRC32=" + hex8((int) ygba.getGraphics().getLayerCRC32(4)));
+					out.println("BG0LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(0));
+					out.println("BG1LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(1));
+					out.println("BG2LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(2));
+					out.println("BG3LayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(3));
+					out.println("OBJLayerNonZero=" + ygba.getGraphics().getLayerNonZeroCount(4));
+				}
 				out.println();
 				dumpDMAState(out);
 				dumpDMATelemetry(out);